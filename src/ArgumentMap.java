@@ -166,6 +166,25 @@ public class ArgumentMap {
 		return defaultValue;
 	}
 
+	/**
+	 * Returns the value for the specified flag as a long value. If the flag is
+	 * missing or the flag does not have a value, returns the specified default
+	 * value instead.
+	 *
+	 * @param flag
+	 *            flag to get value for
+	 * @param defaultValue
+	 *            value to return if the flag or value is missing
+	 * @return value of flag as a long, or the default value if the flag or
+	 *         value is missing
+	 */
+	public long getLong(String flag, long defaultValue) {
+		if (hasValue(flag) && map.get(flag).matches("[0-9]{1,18}")) {
+			return Long.parseLong(map.get(flag));
+		}
+		return defaultValue;
+	}
+
 	/**
 	 * Returns a string representation of this argument map.
 	 * 
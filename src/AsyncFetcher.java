@@ -0,0 +1,609 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Fetches HTML pages without blocking a thread per page. A single thread
+ * drives every connection with a {@link Selector}, so hundreds of requests
+ * can be in flight at once, and each fetched page is handed to a work queue
+ * to be parsed. The number of threads that parse pages no longer limits how
+ * many pages are fetched at once.
+ *
+ * Pages are fetched the same way as {@link LinkParser#fetchHTML(URL)}: with
+ * a request from {@link LinkParser#craftHTTPRequest(URL, LinkParser.HTTP)},
+ * reading until the server closes the connection. A fetch is aborted as soon
+ * as the headers of its response say the page is not HTML or is too large,
+ * once more of its body than allowed has been read, once it waits longer
+ * than allowed for a connection or for more of the response, or once it has
+ * taken longer than allowed since it connected, however steadily the response
+ * arrives. How every fetch ends is counted in the statistics of the fetcher.
+ *
+ * @author Anthony Panisales
+ */
+public class AsyncFetcher implements Closeable {
+
+	/** The default largest number of requests in flight at once. */
+	public static final int DEFAULT_IN_FLIGHT = 256;
+
+	/** Size of the buffer connections read into, in bytes. */
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	/** Longest time between checks for fetches that took too long, in milliseconds. */
+	private static final long TICK_MILLIS = 100;
+
+	/**
+	 * Handles a fetched page.
+	 */
+	public interface Handler {
+
+		/**
+		 * Handles a fetched page. Called by a worker thread of the work
+		 * queue, never by the thread that fetches pages.
+		 *
+		 * @param url
+		 *            url that was fetched
+		 * @param html
+		 *            HTML of the page, or null if the page could not be
+		 *            fetched, was not HTML or the fetch was aborted
+		 */
+		public void handle(URL url, String html);
+	}
+
+	private final WorkQueue parsers;
+	private final int maxInFlight;
+	private final FetchLimits limits;
+	private final CrawlStatistics statistics;
+	private final Selector selector;
+	private final Thread thread;
+
+	/** Buffer every connection reads into, only used by the fetching thread. */
+	private final ByteBuffer buffer;
+
+	/** Fetches that have been requested but not started yet. */
+	private final ConcurrentLinkedQueue<Fetch> waiting;
+
+	/** Number of connections open, only used by the fetching thread. */
+	private int inFlight;
+
+	/** Number of fetches that have been requested but not handled yet. */
+	private int pending;
+
+	private volatile boolean closed;
+
+	/** Whether the fetching thread has stopped, so no more fetches are started. */
+	private volatile boolean stopped;
+
+	/**
+	 * Starts a fetcher with the default number of requests in flight.
+	 *
+	 * @param parsers
+	 *            work queue to handle fetched pages
+	 * @throws IOException
+	 *
+	 * @see #AsyncFetcher(WorkQueue, int)
+	 */
+	public AsyncFetcher(WorkQueue parsers) throws IOException {
+		this(parsers, DEFAULT_IN_FLIGHT);
+	}
+
+	/**
+	 * Starts a fetcher with the default fetch limits.
+	 *
+	 * @param parsers
+	 *            work queue to handle fetched pages
+	 * @param maxInFlight
+	 *            largest number of requests in flight at once
+	 * @throws IOException
+	 *
+	 * @see #AsyncFetcher(WorkQueue, int, FetchLimits, CrawlStatistics)
+	 */
+	public AsyncFetcher(WorkQueue parsers, int maxInFlight) throws IOException {
+		this(parsers, maxInFlight, FetchLimits.DEFAULT, new CrawlStatistics());
+	}
+
+	/**
+	 * Starts a fetcher.
+	 *
+	 * @param parsers
+	 *            work queue to handle fetched pages
+	 * @param maxInFlight
+	 *            largest number of requests in flight at once
+	 * @param limits
+	 *            limits to abort fetches at
+	 * @param statistics
+	 *            statistics to count how each fetch ends in
+	 * @throws IOException
+	 */
+	public AsyncFetcher(WorkQueue parsers, int maxInFlight, FetchLimits limits, CrawlStatistics statistics)
+			throws IOException {
+		this.parsers = parsers;
+		this.maxInFlight = Math.max(maxInFlight, 1);
+		this.limits = limits;
+		this.statistics = statistics;
+		this.selector = Selector.open();
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.waiting = new ConcurrentLinkedQueue<>();
+		this.inFlight = 0;
+		this.pending = 0;
+		this.closed = false;
+		this.stopped = false;
+
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "AsyncFetcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Requests a page. Returns right away, and the handler is called once the
+	 * page has been fetched. The host of the url is looked up by the calling
+	 * thread, so a slow lookup never holds up the other fetches.
+	 *
+	 * @param url
+	 *            url to fetch
+	 * @param handler
+	 *            handler of the fetched page
+	 */
+	public void fetch(URL url, Handler handler) {
+		synchronized (this) {
+			pending++;
+		}
+
+		int port = url.getPort() < 0 ? LinkParser.DEFAULT_PORT : url.getPort();
+		InetSocketAddress address = new InetSocketAddress(url.getHost(), port);
+		Fetch fetch = new Fetch(url, address, handler);
+		if (address.isUnresolved()) {
+			handOff(fetch, CrawlStatistics.Outcome.FAILED);
+			return;
+		}
+
+		waiting.add(fetch);
+		if (stopped) {
+			// The fetching thread will never start it
+			failWaiting();
+		} else {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * Waits until every page requested so far, and every page requested by
+	 * the handlers in the meantime, has been fetched and handled.
+	 *
+	 * @throws InterruptedException
+	 */
+	public synchronized void finish() throws InterruptedException {
+		while (pending > 0) {
+			wait();
+		}
+	}
+
+	/**
+	 * Returns the statistics of the fetches.
+	 *
+	 * @return statistics of the fetcher
+	 */
+	public CrawlStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Stops fetching pages and closes every connection. Pages that are still
+	 * being fetched, or requested afterwards, are handled as failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Drives every connection until the fetcher is closed. However it stops,
+	 * every fetch that was not handed off yet is handed off as failed, so
+	 * {@link #finish()} never waits for a fetch that will never end.
+	 */
+	private void loop() {
+		try {
+			while (!closed) {
+				Fetch fetch;
+				while (inFlight < maxInFlight && (fetch = waiting.poll()) != null) {
+					start(fetch);
+				}
+
+				selector.select(TICK_MILLIS);
+				for (SelectionKey key : selector.selectedKeys()) {
+					step(key);
+				}
+				selector.selectedKeys().clear();
+				expire();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			System.err.println("Warning: Fetcher stopped: " + e.getMessage());
+		}
+		finally {
+			stopped = true;
+			for (SelectionKey key : selector.keys()) {
+				// A cancelled key belongs to a fetch that was handed off already
+				if (key.isValid()) {
+					key.cancel();
+					handOff((Fetch) key.attachment(), CrawlStatistics.Outcome.FAILED);
+				}
+				closeQuietly(key.channel());
+			}
+			closeQuietly(selector);
+			failWaiting();
+		}
+	}
+
+	/**
+	 * Hands off every fetch that has not been started as failed, once the
+	 * fetching thread has stopped.
+	 */
+	private void failWaiting() {
+		Fetch fetch;
+		while ((fetch = waiting.poll()) != null) {
+			handOff(fetch, CrawlStatistics.Outcome.FAILED);
+		}
+	}
+
+	/**
+	 * Opens the connection of a fetch.
+	 */
+	private void start(Fetch fetch) {
+		try {
+			SocketChannel channel = SocketChannel.open();
+			fetch.channel = channel;
+			channel.configureBlocking(false);
+			if (channel.connect(fetch.address)) {
+				fetch.connected = true;
+				fetch.setDeadline(limits.getReadMillis());
+				fetch.setDue(limits.getFetchMillis());
+				channel.register(selector, SelectionKey.OP_WRITE, fetch);
+			} else {
+				fetch.setDeadline(limits.getConnectMillis());
+				channel.register(selector, SelectionKey.OP_CONNECT, fetch);
+			}
+			inFlight++;
+		}
+		catch (IOException e) {
+			closeQuietly(fetch.channel);
+			handOff(fetch, CrawlStatistics.Outcome.FAILED);
+		}
+	}
+
+	/**
+	 * Moves a fetch forward once its connection is ready: finishes
+	 * connecting, sends the request, or reads more of the response.
+	 */
+	private void step(SelectionKey key) {
+		Fetch fetch = (Fetch) key.attachment();
+		SocketChannel channel = fetch.channel;
+		try {
+			if (key.isConnectable()) {
+				if (channel.finishConnect()) {
+					fetch.connected = true;
+					fetch.setDeadline(limits.getReadMillis());
+					fetch.setDue(limits.getFetchMillis());
+					key.interestOps(SelectionKey.OP_WRITE);
+				}
+			} else if (key.isWritable()) {
+				channel.write(fetch.request);
+				fetch.setDeadline(limits.getReadMillis());
+				if (!fetch.request.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			} else if (key.isReadable()) {
+				buffer.clear();
+				int read = channel.read(buffer);
+				if (read > 0) {
+					fetch.response.write(buffer.array(), 0, read);
+					fetch.setDeadline(limits.getReadMillis());
+					CrawlStatistics.Outcome abort = check(fetch, read);
+					if (abort != null) {
+						end(key, fetch);
+						handOff(fetch, abort);
+					}
+				} else if (read < 0) {
+					end(key, fetch);
+					handOff(fetch, null);
+				}
+			}
+		}
+		catch (IOException e) {
+			end(key, fetch);
+			handOff(fetch, CrawlStatistics.Outcome.FAILED);
+		}
+	}
+
+	/**
+	 * Checks the response of a fetch after more of it was read into the
+	 * buffer. Once the headers have been read, they decide whether the rest
+	 * of the response is worth reading.
+	 *
+	 * @param fetch
+	 *            fetch that read more of its response
+	 * @param read
+	 *            number of bytes just read into the buffer
+	 * @return why the fetch should be aborted, or null to go on reading
+	 */
+	private CrawlStatistics.Outcome check(Fetch fetch, int read) {
+		if (fetch.bodyStart < 0 && fetch.findBody(buffer.array(), read)) {
+			List<String> headers;
+			try {
+				headers = HttpConnectionPool.readHeaders(new ByteArrayInputStream(fetch.response.toByteArray()));
+			}
+			catch (IOException e) {
+				return CrawlStatistics.Outcome.FAILED;
+			}
+
+			if (!LinkParser.isHTML(headers)) {
+				return CrawlStatistics.Outcome.NOT_HTML;
+			}
+			String length = LinkParser.parseHeaders(headers).get("Content-Length");
+			if (length != null && length.matches("\\d{1,18}") && Long.parseLong(length) > limits.getMaxBytes()) {
+				return CrawlStatistics.Outcome.TOO_LARGE;
+			}
+		}
+
+		// Counts the headers too until they end, so they can not grow forever
+		if (fetch.response.size() - Math.max(fetch.bodyStart, 0) > limits.getMaxBytes()) {
+			return CrawlStatistics.Outcome.TOO_LARGE;
+		}
+		return null;
+	}
+
+	/**
+	 * Aborts every fetch that has waited too long for its connection or for
+	 * more of its response, or that has taken too long as a whole.
+	 */
+	private void expire() {
+		long now = System.nanoTime();
+		for (SelectionKey key : selector.keys()) {
+			Fetch fetch = (Fetch) key.attachment();
+			if (key.isValid() && fetch.isLate(now)) {
+				end(key, fetch);
+				handOff(fetch, fetch.connected ? CrawlStatistics.Outcome.READ_TIMEOUT
+						: CrawlStatistics.Outcome.CONNECT_TIMEOUT);
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection of a fetch, making room for the next fetch.
+	 */
+	private void end(SelectionKey key, Fetch fetch) {
+		key.cancel();
+		closeQuietly(fetch.channel);
+		inFlight--;
+	}
+
+	/**
+	 * Hands a fetched page to the work queue, which also decodes the page so
+	 * the fetching thread only ever moves bytes.
+	 *
+	 * @param fetch
+	 *            fetch that ended
+	 * @param abort
+	 *            why the fetch was aborted, or null if the whole response
+	 *            was read
+	 */
+	private void handOff(final Fetch fetch, final CrawlStatistics.Outcome abort) {
+		parsers.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					String html = abort == null ? fetch.getHTML() : null;
+					if (abort != null) {
+						statistics.count(abort);
+					} else {
+						statistics.count(html != null ? CrawlStatistics.Outcome.FETCHED
+								: CrawlStatistics.Outcome.FAILED);
+					}
+					fetch.handler.handle(fetch.url, html);
+				}
+				finally {
+					handled();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Counts a handled fetch, waking up threads waiting for every fetch to
+	 * be handled.
+	 */
+	private synchronized void handled() {
+		pending--;
+		if (pending == 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Closes a channel or selector, ignoring any error.
+	 */
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		}
+		catch (IOException e) {
+			// Nothing left to do with it
+		}
+	}
+
+	/**
+	 * Holds the state of a single fetch.
+	 */
+	private static class Fetch {
+
+		private final URL url;
+		private final InetSocketAddress address;
+		private final Handler handler;
+		private final ByteBuffer request;
+		private final ByteArrayOutputStream response;
+		private SocketChannel channel;
+
+		/** Whether the connection was made. */
+		private boolean connected;
+
+		/** Whether the fetch has a deadline. */
+		private boolean timed;
+
+		/** Time to abort the fetch at, from {@link System#nanoTime()}. */
+		private long deadline;
+
+		/** Whether the fetch has to end by a fixed time. */
+		private boolean bounded;
+
+		/** Time the fetch has to end by, from {@link System#nanoTime()}, which is never moved. */
+		private long due;
+
+		/** Index in the response where the body starts, or -1 until the headers end. */
+		private int bodyStart;
+
+		/** Index in the response where the current head starts, after any interim 1xx heads. */
+		private int headStart;
+
+		/** Number of characters of the current line of the headers so far. */
+		private int lineLength;
+
+		public Fetch(URL url, InetSocketAddress address, Handler handler) {
+			this.url = url;
+			this.address = address;
+			this.handler = handler;
+			String request = LinkParser.craftHTTPRequest(url, LinkParser.HTTP.GET);
+			this.request = ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8));
+			this.response = new ByteArrayOutputStream();
+			this.channel = null;
+			this.connected = false;
+			this.timed = false;
+			this.deadline = 0;
+			this.bounded = false;
+			this.due = 0;
+			this.bodyStart = -1;
+			this.headStart = 0;
+			this.lineLength = 0;
+		}
+
+		/**
+		 * Sets the deadline of the fetch from now.
+		 *
+		 * @param millis
+		 *            time to wait from now, in milliseconds, or 0 to wait
+		 *            forever
+		 */
+		private void setDeadline(int millis) {
+			timed = millis > 0;
+			deadline = System.nanoTime() + millis * 1000000L;
+		}
+
+		/**
+		 * Sets the time the whole fetch has to end by, once it connected.
+		 *
+		 * @param millis
+		 *            time the fetch may take from now, in milliseconds, or 0
+		 *            to take as long as needed
+		 */
+		private void setDue(int millis) {
+			bounded = millis > 0;
+			due = System.nanoTime() + millis * 1000000L;
+		}
+
+		/**
+		 * Tests whether the fetch has passed its deadline or the time it has
+		 * to end by.
+		 *
+		 * @param now
+		 *            current time, from {@link System#nanoTime()}
+		 * @return true if the fetch should be aborted
+		 */
+		private boolean isLate(long now) {
+			return (timed && now - deadline > 0) || (bounded && now - due > 0);
+		}
+
+		/**
+		 * Looks for the empty line that ends the headers in the bytes just
+		 * read, which are at the end of the response. Interim 1xx heads are
+		 * skipped, so the headers are those of the final response.
+		 *
+		 * @param bytes
+		 *            bytes just read
+		 * @param read
+		 *            number of bytes just read
+		 * @return true if the headers ended
+		 */
+		private boolean findBody(byte[] bytes, int read) {
+			int offset = response.size() - read;
+			for (int i = 0; i < read; i++) {
+				if (bytes[i] == '\n') {
+					if (lineLength == 0) {
+						if (isInterim()) {
+							headStart = offset + i + 1;
+							continue;
+						}
+						bodyStart = offset + i + 1;
+						return true;
+					}
+					lineLength = 0;
+				} else if (bytes[i] != '\r') {
+					lineLength++;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Tests whether the head that just ended is of an interim response.
+		 */
+		private boolean isInterim() {
+			byte[] bytes = response.toByteArray();
+			int end = headStart;
+			while (end < bytes.length && bytes[end] != '\n') {
+				end++;
+			}
+			String status = new String(bytes, headStart, end - headStart, StandardCharsets.UTF_8).trim();
+			return HttpConnectionPool.isInterim(HttpConnectionPool.parseCode(status));
+		}
+
+		/**
+		 * Returns the HTML of the response, the same way as
+		 * {@link LinkParser#fetchHTML(URL)}, with the body decoded from its
+		 * framing.
+		 *
+		 * @return HTML of the response, or null if it was not HTML
+		 */
+		private String getHTML() {
+			try {
+				return LinkParser.getHTML(HttpConnectionPool.readLines(new ByteArrayInputStream(response.toByteArray())));
+			}
+			catch (IOException e) {
+				// The response ended early
+				return null;
+			}
+		}
+	}
+}
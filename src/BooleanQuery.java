@@ -0,0 +1,368 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A query that combines words with uppercase AND, OR, and NOT operators and
+ * parentheses. NOT binds the tightest, then AND, then OR. Words next to each
+ * other without an operator are combined with OR, just like a plain query.
+ * A NOT is only used to exclude documents from an AND, so a query that only
+ * excludes words matches nothing.
+ *
+ * Words in double quotes and words joined by a NEAR/k operator are operands
+ * of their own, matched as a {@link ProximityQuery} clause, so
+ * {@code apple AND "apple pie"} only matches documents with the phrase. A
+ * NEAR/k operator binds tighter than any other operator.
+ *
+ * Queries are parsed once and passed around parsed in a {@link QueryKey}.
+ * Their canonical form, where the operands of every AND and OR are sorted
+ * and parentheses are only used where they are needed, such as
+ * {@code apple AND (fig OR pie) AND NOT banana}, names them in the key of
+ * their query.
+ *
+ * @author Anthony Panisales
+ */
+public class BooleanQuery implements Comparable<BooleanQuery> {
+
+	/** Kinds of nodes in a query. */
+	public enum Operator {
+		WORD, CLAUSE, AND, OR, NOT
+	}
+
+	/** Regular expression for the tokens of a query, where a quote that is not closed runs to the end. */
+	private static final Pattern TOKEN_REGEX = Pattern.compile("\"[^\"]*\"?|[()]|[^\\s()\"]+");
+
+	/** Regular expression for a line that uses an operator. */
+	private static final Pattern OPERATOR_REGEX = Pattern.compile("(^|[\\s()])(AND|OR|NOT)($|[\\s()])");
+
+	private final Operator operator;
+	private final String word;
+	private final ProximityQuery clause;
+	private final List<BooleanQuery> operands;
+
+	/**
+	 * Initializes a query node.
+	 *
+	 * @param operator
+	 *            kind of node
+	 * @param word
+	 *            word of a WORD node, canonical form of a CLAUSE node, or
+	 *            null
+	 * @param clause
+	 *            clause of a CLAUSE node, or null
+	 * @param operands
+	 *            operands of an AND, OR, or NOT node
+	 */
+	private BooleanQuery(Operator operator, String word, ProximityQuery clause, List<BooleanQuery> operands) {
+		this.operator = operator;
+		this.word = word;
+		this.clause = clause;
+		this.operands = operands;
+	}
+
+	/**
+	 * Initializes a WORD node.
+	 */
+	private static BooleanQuery word(String word) {
+		return new BooleanQuery(Operator.WORD, word, null, null);
+	}
+
+	/**
+	 * Initializes a CLAUSE node.
+	 */
+	private static BooleanQuery clause(ProximityQuery clause) {
+		return new BooleanQuery(Operator.CLAUSE, clause.toString(), clause, null);
+	}
+
+	/**
+	 * Returns the kind of node.
+	 *
+	 * @return operator of the node
+	 */
+	public Operator getOperator() {
+		return operator;
+	}
+
+	/**
+	 * Returns the word of a WORD node, or the canonical form of the phrase or
+	 * proximity clause of a CLAUSE node.
+	 *
+	 * @return word or clause, or null if the node is neither
+	 */
+	public String getWord() {
+		return word;
+	}
+
+	/**
+	 * Returns the phrase or proximity clause of a CLAUSE node.
+	 *
+	 * @return clause, or null if the node is not a CLAUSE node
+	 */
+	public ProximityQuery getClause() {
+		return clause;
+	}
+
+	/**
+	 * Returns the operands of an AND, OR, or NOT node.
+	 *
+	 * @return sorted list of operands
+	 */
+	public List<BooleanQuery> getOperands() {
+		return operands;
+	}
+
+	/**
+	 * Tests whether a line of a query uses boolean operators.
+	 *
+	 * @param line
+	 *            line of a query
+	 * @return true if the line has an uppercase AND, OR, or NOT
+	 */
+	public static boolean hasOperators(String line) {
+		return OPERATOR_REGEX.matcher(line).find();
+	}
+
+	/**
+	 * Parses a line of a query. Words are cleaned the same way as the words
+	 * of a plain query. Operators without operands and unmatched parentheses
+	 * are ignored.
+	 *
+	 * @param line
+	 *            line of a query
+	 * @return parsed query, or null if the line has no words
+	 */
+	public static BooleanQuery parse(String line) {
+		List<String> tokens = new ArrayList<String>();
+		Matcher matcher = TOKEN_REGEX.matcher(line);
+		while (matcher.find()) {
+			tokens.add(matcher.group());
+		}
+		Parser parser = new Parser(tokens);
+		BooleanQuery query = null;
+		while (parser.index < tokens.size()) {
+			// Skips over unmatched closing parentheses
+			query = combine(Operator.OR, query, parser.parseOr());
+			parser.index++;
+		}
+		return query;
+	}
+
+	/**
+	 * Combines two queries with an operator, flattening nested operators of
+	 * the same kind.
+	 *
+	 * @param operator
+	 *            AND or OR
+	 * @param left
+	 *            first query, or null
+	 * @param right
+	 *            second query, or null
+	 * @return combined query, or null if both queries are null
+	 */
+	private static BooleanQuery combine(Operator operator, BooleanQuery left, BooleanQuery right) {
+		if (left == null || right == null) {
+			return left == null ? right : left;
+		}
+
+		List<BooleanQuery> operands = new ArrayList<BooleanQuery>();
+		for (BooleanQuery query : new BooleanQuery[] { left, right }) {
+			List<BooleanQuery> queries = query.operator == operator ? query.operands : Collections.singletonList(query);
+			for (BooleanQuery operand : queries) {
+				if (!operands.contains(operand)) {
+					operands.add(operand);
+				}
+			}
+		}
+		if (operands.size() == 1) {
+			return operands.get(0);
+		}
+		Collections.sort(operands);
+		return new BooleanQuery(operator, null, null, Collections.unmodifiableList(operands));
+	}
+
+	/**
+	 * Parses tokens with recursive descent, one method per level of
+	 * precedence.
+	 */
+	private static class Parser {
+
+		private final List<String> tokens;
+		private int index;
+
+		public Parser(List<String> tokens) {
+			this.tokens = tokens;
+			this.index = 0;
+		}
+
+		/**
+		 * @return true if the next token is the given one
+		 */
+		private boolean peek(String token) {
+			return index < tokens.size() && tokens.get(index).equals(token);
+		}
+
+		/**
+		 * Parses operands joined by OR or by nothing at all.
+		 */
+		private BooleanQuery parseOr() {
+			BooleanQuery query = null;
+			while (index < tokens.size() && !peek(")")) {
+				if (peek("OR")) {
+					index++;
+					continue;
+				}
+				query = combine(Operator.OR, query, parseAnd());
+			}
+			return query;
+		}
+
+		/**
+		 * Parses operands joined by AND.
+		 */
+		private BooleanQuery parseAnd() {
+			BooleanQuery query = parseNot();
+			while (peek("AND")) {
+				index++;
+				query = combine(Operator.AND, query, parseNot());
+			}
+			return query;
+		}
+
+		/**
+		 * Parses a word, a clause, a NOT, or an expression in parentheses.
+		 * Consumes at least one token unless the next token closes a
+		 * parenthesis.
+		 */
+		private BooleanQuery parseNot() {
+			if (index >= tokens.size() || peek(")")) {
+				return null;
+			}
+
+			String token = tokens.get(index++);
+			if (token.equals("NOT")) {
+				BooleanQuery operand = parseNot();
+				if (operand == null) {
+					return null;
+				}
+				if (operand.operator == Operator.NOT) {
+					return operand.operands.get(0);
+				}
+				return new BooleanQuery(Operator.NOT, null, null, Collections.singletonList(operand));
+			} else if (token.equals("(")) {
+				BooleanQuery query = parseOr();
+				if (peek(")")) {
+					index++;
+				}
+				return query;
+			} else if (token.equals("AND") || token.equals("OR") || ProximityQuery.parseOperator(token) >= 0) {
+				// A NEAR/k operator that is not between two words is ignored
+				return null;
+			} else if (token.startsWith("\"")) {
+				return parsePhrase(token);
+			}
+
+			String[] words = WordParser.parseWords(token);
+			BooleanQuery query = null;
+			int end = words.length;
+			if (end > 0 && index + 1 < tokens.size() && ProximityQuery.parseOperator(tokens.get(index)) >= 0
+					&& isWord(tokens.get(index + 1))) {
+				int distance = ProximityQuery.parseOperator(tokens.get(index));
+				String[] next = WordParser.parseWords(tokens.get(index + 1));
+				if (next.length > 0) {
+					// Joins the words right before and after the operator
+					index += 2;
+					end--;
+					query = clause(ProximityQuery.near(words[end], distance, next[0]));
+					for (int i = 1; i < next.length; i++) {
+						query = combine(Operator.OR, query, word(next[i]));
+					}
+				}
+			}
+			for (int i = 0; i < end; i++) {
+				query = combine(Operator.OR, query, word(words[i]));
+			}
+			return query;
+		}
+
+		/**
+		 * Parses a token in double quotes into a phrase clause.
+		 *
+		 * @return phrase clause, or null if the quotes have no words
+		 */
+		private BooleanQuery parsePhrase(String token) {
+			int end = token.length() > 1 && token.endsWith("\"") ? token.length() - 1 : token.length();
+			String[] words = WordParser.parseWords(token.substring(1, end));
+			return words.length == 0 ? null : clause(ProximityQuery.phrase(words));
+		}
+
+		/**
+		 * Tests whether a token is a plain word rather than an operator, a
+		 * parenthesis or a phrase.
+		 */
+		private boolean isWord(String token) {
+			return !token.equals("(") && !token.equals(")") && !token.startsWith("\"") && !token.equals("AND")
+					&& !token.equals("OR") && !token.equals("NOT") && ProximityQuery.parseOperator(token) < 0;
+		}
+	}
+
+	/**
+	 * Returns the canonical form of the query, which parses back into an
+	 * equal query.
+	 *
+	 * @return canonical form of the query
+	 */
+	@Override
+	public String toString() {
+		switch (operator) {
+		case WORD:
+		case CLAUSE:
+			return word;
+		case NOT:
+			return "NOT " + operand(operands.get(0), Operator.NOT);
+		default:
+			StringBuilder builder = new StringBuilder();
+			for (BooleanQuery query : operands) {
+				if (builder.length() > 0) {
+					builder.append(' ').append(operator).append(' ');
+				}
+				builder.append(operand(query, operator));
+			}
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * Returns the canonical form of an operand, in parentheses if it binds
+	 * more loosely than the operator it is an operand of.
+	 *
+	 * @param query
+	 *            operand
+	 * @param parent
+	 *            operator the query is an operand of
+	 * @return canonical form of the operand
+	 */
+	private static String operand(BooleanQuery query, Operator parent) {
+		if (query.operator == Operator.WORD || query.operator == Operator.CLAUSE || query.operator == Operator.NOT
+				|| (query.operator == Operator.AND && parent == Operator.OR)) {
+			return query.toString();
+		}
+		return "(" + query.toString() + ")";
+	}
+
+	@Override
+	public int compareTo(BooleanQuery other) {
+		return toString().compareTo(other.toString());
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof BooleanQuery && toString().equals(other.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+}
@@ -0,0 +1,334 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares how long it takes to crawl a web site with a thread per fetch and
+ * with non-blocking fetches. The site is a synthetic graph of linked pages
+ * served by a small HTTP server inside the benchmark, which can wait before
+ * every response to act like a slow network, so no real web site is ever
+ * crawled.
+ *
+ * <pre>
+ * java CrawlBenchmark [-pages num] [-links num] [-delay millis] [-threads num] [-rounds num]
+ * </pre>
+ *
+ * @author Anthony Panisales
+ */
+public class CrawlBenchmark {
+
+	/** Names of the ways a site can be crawled. */
+	private static final String[] MODES = {
+			"Work queue, pooled connections",
+			"Non-blocking fetches"
+	};
+
+	public static void main(String[] args) throws Exception {
+		ArgumentMap argMap = new ArgumentMap(args);
+
+		int pages = Math.max(argMap.getInteger("-pages", 500), 1);
+		int links = Math.max(argMap.getInteger("-links", 5), 1);
+		int delay = Math.max(argMap.getInteger("-delay", 20), 0);
+		int numOfThreads = argMap.getInteger("-threads", WorkQueue.DEFAULT);
+		int rounds = Math.max(argMap.getInteger("-rounds", 3), 1);
+
+		try (SyntheticSite site = new SyntheticSite(pages, links, delay)) {
+			URL seed = site.getURL(0);
+
+			// The first crawls warm up the JVM
+			for (int mode = 0; mode < MODES.length; mode++) {
+				crawl(seed, pages, numOfThreads, mode);
+			}
+			site.takeConnectionCount();
+			site.takeRequestCount();
+
+			long[] times = new long[MODES.length];
+			long[] connections = new long[MODES.length];
+			long[] requests = new long[MODES.length];
+			int found = 0;
+			for (int i = 0; i < rounds; i++) {
+				for (int mode = 0; mode < MODES.length; mode++) {
+					long start = System.nanoTime();
+					int modeFound = crawl(seed, pages, numOfThreads, mode);
+					times[mode] += System.nanoTime() - start;
+					connections[mode] += site.takeConnectionCount();
+					requests[mode] += site.takeRequestCount();
+
+					if (mode == 0) {
+						found = modeFound;
+					} else if (modeFound != found) {
+						System.out.printf("%s found %d pages instead of %d%n", MODES[mode], modeFound, found);
+					}
+				}
+			}
+
+			System.out.printf("Pages: %d, found: %d, delay: %d ms, threads: %d, rounds: %d%n", pages, found, delay,
+					numOfThreads, rounds);
+			for (int mode = 0; mode < MODES.length; mode++) {
+				System.out.printf("%-30s %.3f seconds per crawl, %d connections for %d requests%n", MODES[mode] + ":",
+						times[mode] / rounds * 0.000000001, connections[mode] / rounds, requests[mode] / rounds);
+			}
+		}
+	}
+
+	/**
+	 * Crawls the site from the seed.
+	 *
+	 * @param seed
+	 *            URL of the first page
+	 * @param pages
+	 *            number of pages to crawl
+	 * @param numOfThreads
+	 *            number of worker threads to use
+	 * @param mode
+	 *            index of the way to crawl in {@link #MODES}
+	 * @return number of documents in the inverted index
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static int crawl(URL seed, int pages, int numOfThreads, int mode)
+			throws IOException, InterruptedException {
+		WebCrawler crawler = new WebCrawler(pages);
+		if (mode == 1) {
+			crawler.asyncBuildIndex(seed, numOfThreads);
+		} else {
+			crawler.threadsBuildIndex(seed, numOfThreads);
+		}
+		return crawler.getIndex().getDocumentCount();
+	}
+
+	/**
+	 * Serves a graph of linked pages over HTTP on a local port. Page n links to
+	 * page n + 1 so that every page can be reached from the first, and to
+	 * other pages picked at random. The words and links of every page are
+	 * always the same, so every crawl of the site finds the same index.
+	 */
+	public static class SyntheticSite implements AutoCloseable {
+
+		private static final String[] WORDS = { "apple", "banana", "cherry", "date", "elder", "fig", "grape",
+				"honeydew", "kiwi", "lemon", "mango", "nectarine", "orange", "papaya", "quince", "raspberry" };
+
+		private final int pages;
+		private final int links;
+		private final int delay;
+		private final ServerSocket server;
+		private final ExecutorService connections;
+		private final Thread acceptor;
+		private final AtomicInteger connectionCount;
+		private final AtomicInteger requestCount;
+
+		/**
+		 * Starts serving the site.
+		 *
+		 * @param pages
+		 *            number of pages
+		 * @param links
+		 *            number of random links on each page
+		 * @param delay
+		 *            milliseconds to wait before every response
+		 * @throws IOException
+		 */
+		public SyntheticSite(int pages, int links, int delay) throws IOException {
+			this.pages = pages;
+			this.links = links;
+			this.delay = delay;
+			this.server = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+			this.connections = Executors.newCachedThreadPool();
+			this.connectionCount = new AtomicInteger();
+			this.requestCount = new AtomicInteger();
+			this.acceptor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					accept();
+				}
+			}, "SyntheticSite");
+			this.acceptor.setDaemon(true);
+			this.acceptor.start();
+		}
+
+		/**
+		 * Returns the URL of a page.
+		 *
+		 * @param page
+		 *            number of the page
+		 * @return URL of the page
+		 * @throws IOException
+		 */
+		public URL getURL(int page) throws IOException {
+			return new URL("http", server.getInetAddress().getHostAddress(), server.getLocalPort(), "/page" + page + ".html");
+		}
+
+		/**
+		 * Accepts connections until the site is closed.
+		 */
+		private void accept() {
+			while (!server.isClosed()) {
+				try {
+					final Socket socket = server.accept();
+					connections.execute(new Runnable() {
+						@Override
+						public void run() {
+							respond(socket);
+						}
+					});
+				}
+				catch (IOException e) {
+					// The site was closed
+				}
+			}
+		}
+
+		/**
+		 * Reads requests and writes the pages they ask for, until the client
+		 * asks to close the connection or closes it. Odd pages are sent in
+		 * chunked framing and even pages with a Content-Length.
+		 */
+		private void respond(Socket socket) {
+			connectionCount.incrementAndGet();
+			try (Socket connection = socket) {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+				// Sends each response in as few packets as possible
+				OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+				String line;
+				while ((line = reader.readLine()) != null) {
+					requestCount.incrementAndGet();
+					String path = line.split(" ")[1];
+					boolean close = false;
+					while ((line = reader.readLine()) != null && !line.isEmpty()) {
+						close |= line.equalsIgnoreCase("Connection: close");
+					}
+
+					if (delay > 0) {
+						Thread.sleep(delay);
+					}
+
+					String status = "200 OK";
+					String body = page(path);
+					if (body == null) {
+						status = "404 Not Found";
+						body = "<html><body>Not found</body></html>";
+					}
+
+					byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+					boolean chunked = path.matches(".*[13579]\\.html");
+					StringBuilder headers = new StringBuilder();
+					headers.append("HTTP/1.1 ").append(status).append("\r\n");
+					headers.append("Content-Type: text/html; charset=UTF-8\r\n");
+					if (chunked) {
+						headers.append("Transfer-Encoding: chunked\r\n");
+					} else {
+						headers.append("Content-Length: ").append(bytes.length).append("\r\n");
+					}
+					headers.append("Connection: ").append(close ? "close" : "keep-alive").append("\r\n\r\n");
+					out.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+
+					if (chunked) {
+						// Splits the page in two chunks, then the last empty chunk
+						int half = bytes.length / 2;
+						writeChunk(out, bytes, 0, half);
+						writeChunk(out, bytes, half, bytes.length - half);
+						writeChunk(out, bytes, 0, 0);
+					} else {
+						out.write(bytes);
+					}
+					out.flush();
+
+					if (close) {
+						break;
+					}
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				// The crawler gave up on the page
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Writes a chunk of a body in chunked framing.
+		 */
+		private static void writeChunk(OutputStream out, byte[] bytes, int offset, int length) throws IOException {
+			out.write((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.write(bytes, offset, length);
+			out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+		}
+
+		/**
+		 * Returns the number of connections accepted so far, and starts
+		 * counting again.
+		 *
+		 * @return number of connections accepted
+		 */
+		public int takeConnectionCount() {
+			return connectionCount.getAndSet(0);
+		}
+
+		/**
+		 * Returns the number of requests answered so far, and starts counting
+		 * again.
+		 *
+		 * @return number of requests answered
+		 */
+		public int takeRequestCount() {
+			return requestCount.getAndSet(0);
+		}
+
+		/**
+		 * Returns the HTML of the page at a path.
+		 *
+		 * @param path
+		 *            path of the page
+		 * @return HTML of the page, or null if there is no page at the path
+		 */
+		private String page(String path) {
+			int page;
+			try {
+				page = Integer.parseInt(path.replaceAll("^/page|\\.html$", ""));
+			}
+			catch (NumberFormatException e) {
+				return null;
+			}
+			if (page < 0 || page >= pages) {
+				return null;
+			}
+
+			Random random = new Random(page);
+			StringBuilder html = new StringBuilder();
+			html.append("<html><head><title>Page ").append(page).append("</title></head><body>\n");
+			html.append("<p>page").append(page);
+			for (int i = 0; i < 50; i++) {
+				html.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			html.append("</p>\n");
+			html.append("<a href=\"page").append((page + 1) % pages).append(".html\">next</a>\n");
+			for (int i = 0; i < links; i++) {
+				html.append("<a href=\"/page").append(random.nextInt(pages)).append(".html\">link</a>\n");
+			}
+			html.append("</body></html>\n");
+			return html.toString();
+		}
+
+		/**
+		 * Stops serving the site.
+		 */
+		@Override
+		public void close() throws IOException {
+			server.close();
+			connections.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Counts how every fetch of a crawl ended: with a whole HTML page, or aborted
+ * for one of several reasons. Safe to use from many threads at once.
+ *
+ * @author Anthony Panisales
+ */
+public class CrawlStatistics {
+
+	/**
+	 * How a fetch ended.
+	 */
+	public static enum Outcome {
+
+		/** A whole HTML page was fetched. */
+		FETCHED("fetched"),
+
+		/** The headers said the page was not HTML. */
+		NOT_HTML("not HTML"),
+
+		/** The body of the page was larger than allowed. */
+		TOO_LARGE("too large"),
+
+		/** The host did not accept the connection in time. */
+		CONNECT_TIMEOUT("connect timeout"),
+
+		/** The host stopped sending the response for too long. */
+		READ_TIMEOUT("read timeout"),
+
+		/** The page could not be fetched for any other reason. */
+		FAILED("failed");
+
+		private final String description;
+
+		private Outcome(String description) {
+			this.description = description;
+		}
+
+		@Override
+		public String toString() {
+			return description;
+		}
+	}
+
+	private final Map<Outcome, Integer> counts;
+
+	/**
+	 * Initializes the statistics with every count at 0.
+	 */
+	public CrawlStatistics() {
+		this.counts = new EnumMap<>(Outcome.class);
+		for (Outcome outcome : Outcome.values()) {
+			counts.put(outcome, 0);
+		}
+	}
+
+	/**
+	 * Counts a fetch.
+	 *
+	 * @param outcome
+	 *            how the fetch ended
+	 */
+	public synchronized void count(Outcome outcome) {
+		counts.put(outcome, counts.get(outcome) + 1);
+	}
+
+	/**
+	 * Returns the number of fetches that ended a way.
+	 *
+	 * @param outcome
+	 *            how the fetches ended
+	 * @return number of fetches
+	 */
+	public synchronized int getCount(Outcome outcome) {
+		return counts.get(outcome);
+	}
+
+	/**
+	 * Returns the number of fetches that were aborted, for any reason.
+	 *
+	 * @return number of aborted fetches
+	 */
+	public synchronized int getAborted() {
+		int aborted = 0;
+		for (Outcome outcome : Outcome.values()) {
+			if (outcome != Outcome.FETCHED) {
+				aborted += counts.get(outcome);
+			}
+		}
+		return aborted;
+	}
+
+	/**
+	 * Returns a summary of the counts, like
+	 * {@code "Fetched 48 pages, aborted 2 (not HTML: 1, too large: 1, ...)"}.
+	 *
+	 * @return summary of the counts
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder summary = new StringBuilder();
+		summary.append("Fetched ").append(counts.get(Outcome.FETCHED)).append(" pages, aborted ")
+				.append(getAborted()).append(" (");
+		String separator = "";
+		for (Outcome outcome : Outcome.values()) {
+			if (outcome != Outcome.FETCHED) {
+				summary.append(separator).append(outcome).append(": ").append(counts.get(outcome));
+				separator = ", ";
+			}
+		}
+		return summary.append(")").toString();
+	}
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds an inverted index from a directory of HTML files using a fork/join
+ * pool. Each directory is listed once, entries that are not HTML files are
+ * filtered out before any work is scheduled, and large directories are split
+ * into chunks of files. Idle worker threads steal chunks from busy ones, so
+ * there is no single shared queue for all threads to wait on.
+ *
+ * @author Anthony Panisales
+ */
+public class DirectoryIndexer {
+
+	/** The largest number of files a single task parses without splitting. */
+	private static final int CHUNK_SIZE = 8;
+
+	private final InvertedIndex index;
+	private final ConcurrentHashMap<Thread,InvertedIndex> localIndexes;
+
+	/**
+	 * Initializes a directory indexer for a single build.
+	 *
+	 * @param index
+	 *            the inverted index that is going to be built
+	 * @param local
+	 *            whether each worker thread builds its own private index
+	 */
+	private DirectoryIndexer(InvertedIndex index, boolean local) {
+		this.index = index;
+		this.localIndexes = local ? new ConcurrentHashMap<Thread,InvertedIndex>() : null;
+	}
+
+	/**
+	 * Builds an inverted index from a file or a directory of files using a
+	 * fork/join pool with the specified number of threads. Waits for all
+	 * work to finish.
+	 *
+	 * @param indexInput
+	 *            the file or directory to parse to create the inverted index
+	 * @param index
+	 *            the inverted index that is going to be built
+	 * @param threads
+	 *            number of worker threads to use
+	 * @param local
+	 *            whether each worker thread adds files to its own private
+	 *            index, which are merged in parallel at the end
+	 * @throws IOException
+	 * @throws InterruptedException
+	 *
+	 * @see InvertedIndex#addIndexestoIndex(List, WorkQueue)
+	 */
+	public static void buildIndex(Path indexInput, InvertedIndex index, int threads, boolean local)
+			throws IOException, InterruptedException {
+		if (!Files.isDirectory(indexInput)) {
+			index.checkAndParseFile(indexInput);
+			return;
+		}
+
+		DirectoryIndexer indexer = new DirectoryIndexer(index, local);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		pool.invoke(indexer.new DirectoryAction(indexInput));
+		pool.shutdown();
+
+		if (local) {
+			WorkQueue queue = new WorkQueue(threads);
+			index.addIndexestoIndex(new ArrayList<InvertedIndex>(indexer.localIndexes.values()), queue);
+			queue.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the index the current thread should add files to.
+	 *
+	 * @return shared index, or the private index of the current thread
+	 */
+	private InvertedIndex getIndex() {
+		if (localIndexes == null) {
+			return index;
+		}
+
+		// Only the current thread ever adds its own entry
+		InvertedIndex localIndex = localIndexes.get(Thread.currentThread());
+		if (localIndex == null) {
+			localIndex = new InvertedIndex();
+			localIndexes.put(Thread.currentThread(), localIndex);
+		}
+		return localIndex;
+	}
+
+	/**
+	 * Task that lists a directory, then parses its HTML files and passes
+	 * through its subdirectories in parallel.
+	 */
+	private class DirectoryAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+
+		public DirectoryAction(Path directory) {
+			this.directory = directory;
+		}
+
+		@Override
+		protected void compute() {
+			List<Path> files = new ArrayList<Path>();
+			List<RecursiveAction> actions = new ArrayList<RecursiveAction>();
+
+			try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+				for (Path dspath : ds) {
+					if (Files.isDirectory(dspath)) {
+						actions.add(new DirectoryAction(dspath));
+					} else if (InvertedIndex.isHTMLFile(dspath)) {
+						files.add(dspath);
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+
+			if (!files.isEmpty()) {
+				actions.add(new FilesAction(files, 0, files.size()));
+			}
+			invokeAll(actions);
+		}
+	}
+
+	/**
+	 * Task that parses a range of HTML files, splitting the range in half
+	 * until it is small enough to parse directly.
+	 */
+	private class FilesAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Path> files;
+		private final int start;
+		private final int end;
+
+		public FilesAction(List<Path> files, int start, int end) {
+			this.files = files;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > CHUNK_SIZE) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new FilesAction(files, start, middle), new FilesAction(files, middle, end));
+				return;
+			}
+
+			InvertedIndex target = getIndex();
+			for (int i = start; i < end; i++) {
+				try {
+					target.checkAndParseFile(files.get(i));
+				} catch (IOException | InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
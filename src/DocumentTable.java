@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Assigns every document added to an inverted index a dense integer ID, so
+ * the postings of the index can refer to documents without storing their
+ * full path or URL. Also keeps per-document metadata, such as the number of
+ * words found in each document.
+ *
+ * @author Anthony Panisales
+ */
+public class DocumentTable {
+
+	/** Stores the path or URL of each document, indexed by document ID. */
+	private final ArrayList<String> paths;
+
+	/** Stores a mapping of paths or URLs to document IDs. */
+	private final HashMap<String, Integer> ids;
+
+	/** Stores the number of words in each document, indexed by document ID. */
+	private int[] lengths;
+
+	/** The total number of words in all documents. */
+	private long totalLength;
+
+	/**
+	 * Initializes an empty document table.
+	 */
+	public DocumentTable() {
+		paths = new ArrayList<String>();
+		ids = new HashMap<String, Integer>();
+		lengths = new int[16];
+		totalLength = 0;
+	}
+
+	/**
+	 * Adds a document to the table, or updates its metadata if the document
+	 * is already in the table.
+	 *
+	 * @param path
+	 *            path or URL of the document
+	 * @param length
+	 *            number of words in the document
+	 * @return ID of the document
+	 */
+	public synchronized int add(String path, int length) {
+		Integer id = ids.get(path);
+		if (id == null) {
+			id = paths.size();
+			paths.add(path);
+			ids.put(path, id);
+			if (id >= lengths.length) {
+				lengths = Arrays.copyOf(lengths, lengths.length * 2);
+			}
+		} else {
+			totalLength -= lengths[id];
+		}
+		lengths[id] = length;
+		totalLength += length;
+		return id;
+	}
+
+	/**
+	 * Returns the ID of the document with the specified path or URL.
+	 *
+	 * @param path
+	 *            path or URL of the document
+	 * @return ID of the document, or -1 if the document is not in the table
+	 */
+	public synchronized int getId(String path) {
+		Integer id = ids.get(path);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the path or URL of the document with the specified ID.
+	 *
+	 * @param id
+	 *            ID of the document
+	 * @return path or URL of the document
+	 */
+	public synchronized String getPath(int id) {
+		return paths.get(id);
+	}
+
+	/**
+	 * Returns the number of words in the document with the specified ID.
+	 *
+	 * @param id
+	 *            ID of the document
+	 * @return number of words in the document
+	 */
+	public synchronized int getLength(int id) {
+		return lengths[id];
+	}
+
+	/**
+	 * Returns the total number of words in all documents.
+	 *
+	 * @return total number of words
+	 */
+	public synchronized long getTotalLength() {
+		return totalLength;
+	}
+
+	/**
+	 * Returns the number of documents in the table.
+	 *
+	 * @return number of documents
+	 */
+	public synchronized int size() {
+		return paths.size();
+	}
+}
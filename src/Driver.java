@@ -29,7 +29,7 @@ public class Driver {
 	public static void main(String[] args) throws Exception {
 		ArgumentMap argMap = new ArgumentMap(args);
 		InvertedIndex index = new InvertedIndex();
-		QueryHelper queryHelper = new QueryHelper();
+		QueryHelper queryHelper;
 		int numOfThreads = 1;
 		int limit = 50;
 		
@@ -40,6 +40,24 @@ public class Driver {
 			}
 		}
 		
+		// Only keeps the best search results of each query
+		int top = argMap.getInteger("-top", 0);
+		if (top > 0) {
+			queryHelper = new QueryHelper(top);
+		} else {
+			queryHelper = new QueryHelper();
+		}
+		
+		// Opens a snapshot of a previously built inverted index
+		boolean build = argMap.hasFlag("-url") || argMap.hasFlag("-path");
+		if (argMap.hasFlag("-snapshot") && !build) {
+			Path snapshotInput = Paths.get(argMap.getString("-snapshot", "index.snapshot"));
+			snapshotInput = snapshotInput.normalize();
+			if (Files.exists(snapshotInput)) {
+				index = new InvertedIndex(IndexSnapshot.open(snapshotInput));
+			}
+		}
+		
 		// Creates an inverted index using a URLs and a web crawler
 		if (argMap.hasFlag("-url")) {
 			URL seed;
@@ -52,7 +70,11 @@ public class Driver {
 				}
 			}
 			
-			crawler = new WebCrawler(limit);
+			// Aborts fetches that take too long or pages that are too large
+			int timeout = argMap.getInteger("-timeout", FetchLimits.DEFAULT_READ_MILLIS);
+			int deadline = argMap.getInteger("-deadline", FetchLimits.DEFAULT_FETCH_MILLIS);
+			long maxBytes = argMap.getLong("-maxbytes", FetchLimits.DEFAULT_MAX_BYTES);
+			crawler = new WebCrawler(limit, new FetchLimits(timeout, timeout, deadline, maxBytes));
 			
  			if (argMap.hasValue("-url")) {
 				seed = new URL(argMap.getString("-url"));
@@ -63,9 +85,17 @@ public class Driver {
  			
  			seed = LinkParser.clean(seed);
  			
- 			crawler.threadsBuildIndex(seed, numOfThreads);
+ 			if (argMap.hasFlag("-async")) {
+ 				// Fetches pages without blocking, and only parses them with threads
+ 				crawler.asyncBuildIndex(seed, numOfThreads);
+ 			} else {
+ 				crawler.threadsBuildIndex(seed, numOfThreads);
+ 			}
  			
  			index = crawler.getIndex();
+ 			if (argMap.hasFlag("-stats")) {
+ 				System.out.println(crawler.getStatistics());
+ 			}
 		}
 		
 		// Creates an inverted index using paths
@@ -87,10 +117,7 @@ public class Driver {
 			
 			if (argMap.hasFlag("-threads")) {
 				// Uses threads to build the inverted index
-				WorkQueue queue = new WorkQueue(numOfThreads);
-				InvertedIndex.threadsBuildIndex(indexInput, index, queue);
-				queue.finish();
-				queue.shutdown();
+				DirectoryIndexer.buildIndex(indexInput, index, numOfThreads, argMap.hasFlag("-local"));
 			} else {
 				if (Files.isDirectory(indexInput)) {
 					index.checkDirectory(indexInput);
@@ -100,14 +127,38 @@ public class Driver {
 			}
 		}
 		
+		// Writes a snapshot of the inverted index that was just built
+		if (argMap.hasFlag("-snapshot") && build) {
+			Path snapshotOutput = Paths.get(argMap.getString("-snapshot", "index.snapshot"));
+			snapshotOutput = snapshotOutput.normalize();
+			index.writeSnapshot(snapshotOutput);
+		}
+		
 		// Outputs the contents of the inverted index to a file
 		if (argMap.hasFlag("-index")) {
 			Path indexOutput = Paths.get(argMap.getString("-index", "index.json"));
 			indexOutput = indexOutput.normalize();
-			index.asObject(indexOutput);
+			if (argMap.hasFlag("-threads")) {
+				// Uses threads to write ranges of words in parallel
+				WorkQueue queue = new WorkQueue(numOfThreads);
+				index.asObject(indexOutput, queue);
+				queue.shutdown();
+			} else {
+				index.asObject(indexOutput);
+			}
+		}
+		
+		// Ranks search results with BM25 unless another scorer is chosen
+		if (argMap.hasFlag("-rank")) {
+			Scorer scorer = Scorer.forName(argMap.getString("-rank"));
+			if (scorer != null) {
+				index.setScorer(scorer);
+			}
 		}
 		
 		// Performs search queries on the inverted index
+		boolean stream = argMap.hasFlag("-stream") && argMap.hasFlag("-results");
+		boolean streamed = false;
 		if (argMap.hasFlag("-query")) {
 			Path searchInput;
 			
@@ -123,15 +174,24 @@ public class Driver {
 				return;
 			}
 			
-			queryHelper.parseFile(searchInput);
-			if (argMap.hasFlag("-threads")) {
-				// Uses threads to perform searches
+			if (stream) {
+				// Writes the results while searching, without keeping every result in memory
+				Path searchOutput = Paths.get(argMap.getString("-results", "results.json"));
+				searchOutput = searchOutput.normalize();
+				WorkQueue queue = argMap.hasFlag("-threads") ? new WorkQueue(numOfThreads) : null;
+				queryHelper.streamResults(searchInput, searchOutput, index, argMap.hasFlag("-exact"), queue);
+				if (queue != null) {
+					queue.shutdown();
+				}
+				streamed = true;
+			} else if (argMap.hasFlag("-threads")) {
+				// Uses threads to search for the queries as one batch
+				queryHelper.parseFile(searchInput);
 				WorkQueue queue = new WorkQueue(numOfThreads);
-				boolean exact = argMap.hasFlag("-exact");
-				queryHelper.threadsSearch(queue, exact, queryHelper.getQueryResults(), index);
-				queue.finish();
+				queryHelper.batchSearch(index, argMap.hasFlag("-exact"), queue);
 				queue.shutdown();
 			} else {
+				queryHelper.parseFile(searchInput);
 				if (argMap.hasFlag("-exact")) {
 					queryHelper.exactSearch(index);
 				} else {
@@ -141,7 +201,7 @@ public class Driver {
 		}
 		
 		// Outputs the results of search queries on the inverted index to a file
-		if (argMap.hasFlag("-results")) {
+		if (argMap.hasFlag("-results") && !streamed) {
 			Path searchOutput = Paths.get(argMap.getString("-results", "results.json"));
 			searchOutput = searchOutput.normalize();
 			queryHelper.resultsAsObject(searchOutput);
@@ -0,0 +1,109 @@
+/**
+ * Holds the limits a crawler fetches pages with: how long to wait for a
+ * connection, how long to wait for more of a response, how long a whole fetch
+ * may take, and how large the body of a page may be. A fetch that goes over a
+ * limit is aborted, so a slow host or a huge file never holds up a crawl.
+ *
+ * @author Anthony Panisales
+ */
+public class FetchLimits {
+
+	/** The default time to wait for a connection, in milliseconds. */
+	public static final int DEFAULT_CONNECT_MILLIS = 10 * 1000;
+
+	/** The default time to wait for more of a response, in milliseconds. */
+	public static final int DEFAULT_READ_MILLIS = 10 * 1000;
+
+	/** The default time a whole fetch may take, in milliseconds. */
+	public static final int DEFAULT_FETCH_MILLIS = 60 * 1000;
+
+	/** The default largest size of the body of a page, in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+
+	/** The default limits. */
+	public static final FetchLimits DEFAULT = new FetchLimits(DEFAULT_CONNECT_MILLIS, DEFAULT_READ_MILLIS,
+			DEFAULT_FETCH_MILLIS, DEFAULT_MAX_BYTES);
+
+	private final int connectMillis;
+	private final int readMillis;
+	private final int fetchMillis;
+	private final long maxBytes;
+
+	/**
+	 * Initializes the limits, with the default time a whole fetch may take.
+	 *
+	 * @param connectMillis
+	 *            time to wait for a connection, in milliseconds, or 0 to wait
+	 *            forever
+	 * @param readMillis
+	 *            time to wait for more of a response, in milliseconds, or 0 to
+	 *            wait forever
+	 * @param maxBytes
+	 *            largest size of the body of a page, in bytes
+	 *
+	 * @see #FetchLimits(int, int, int, long)
+	 */
+	public FetchLimits(int connectMillis, int readMillis, long maxBytes) {
+		this(connectMillis, readMillis, DEFAULT_FETCH_MILLIS, maxBytes);
+	}
+
+	/**
+	 * Initializes the limits.
+	 *
+	 * @param connectMillis
+	 *            time to wait for a connection, in milliseconds, or 0 to wait
+	 *            forever
+	 * @param readMillis
+	 *            time to wait for more of a response, in milliseconds, or 0 to
+	 *            wait forever
+	 * @param fetchMillis
+	 *            time a whole fetch may take once connected, in milliseconds,
+	 *            or 0 to take as long as it reads more of the response in time
+	 * @param maxBytes
+	 *            largest size of the body of a page, in bytes
+	 */
+	public FetchLimits(int connectMillis, int readMillis, int fetchMillis, long maxBytes) {
+		this.connectMillis = Math.max(connectMillis, 0);
+		this.readMillis = Math.max(readMillis, 0);
+		this.fetchMillis = Math.max(fetchMillis, 0);
+		this.maxBytes = Math.max(maxBytes, 0);
+	}
+
+	/**
+	 * Returns the time to wait for a connection.
+	 *
+	 * @return time in milliseconds, or 0 to wait forever
+	 */
+	public int getConnectMillis() {
+		return connectMillis;
+	}
+
+	/**
+	 * Returns the time to wait for more of a response, once it has been
+	 * requested.
+	 *
+	 * @return time in milliseconds, or 0 to wait forever
+	 */
+	public int getReadMillis() {
+		return readMillis;
+	}
+
+	/**
+	 * Returns the time a whole fetch may take once connected, however
+	 * steadily the response arrives.
+	 *
+	 * @return time in milliseconds, or 0 to take as long as needed
+	 */
+	public int getFetchMillis() {
+		return fetchMillis;
+	}
+
+	/**
+	 * Returns the largest size of the body of a page.
+	 *
+	 * @return size in bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+}
@@ -0,0 +1,642 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Cleans HTML in a single pass over its characters, writing the remaining
+ * text to another writer as soon as it is known to be text. Gives the same
+ * text as {@link HTMLCleaner#stripHTML(String)}, which stays the reference
+ * for what is removed, without building a new copy of the page for every
+ * regular expression.
+ *
+ * Each regular expression of {@link HTMLCleaner} is replaced by a small state
+ * machine, and the machines are chained in the same order as the regular
+ * expressions are applied: comments, then head, style, and script elements,
+ * then tags, and last entities. Each machine matches the same text as its
+ * regular expression, including its quirks: an element is matched by any tag
+ * whose name starts with the element name, like {@code <header>} for head,
+ * and a comment, element, or tag that is never closed is left as text. Only
+ * the characters of a construct that has started but not yet ended are held
+ * back, so a page is usually cleaned with very little memory.
+ *
+ * @see HTMLCleaner
+ *
+ * @author Anthony Panisales
+ */
+public class HTMLStripper extends Writer {
+
+	/** Number of characters read at a time. */
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Stage first;
+	private boolean closed;
+
+	/**
+	 * Initializes a stripper.
+	 *
+	 * @param out
+	 *            writer to write the text without HTML to
+	 */
+	public HTMLStripper(Writer out) {
+		Stage last = new Output(out);
+		last = new EntityStage(last);
+		last = new TagStage(last);
+		last = new ElementStage("script", last);
+		last = new ElementStage("style", last);
+		last = new ElementStage("head", last);
+		this.first = new CommentStage(last);
+		this.closed = false;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		first.write(cbuf, off, len);
+	}
+
+	/**
+	 * Flushes the text written so far that is known to be text. Characters
+	 * that may still turn out to be HTML are held back until the writer is
+	 * closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		first.flush();
+	}
+
+	/**
+	 * Writes the text that was held back, since no construct can be closed
+	 * any more, and closes the other writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			first.finish();
+		}
+	}
+
+	/**
+	 * Removes the HTML from a text.
+	 *
+	 * @param html
+	 *            text to clean
+	 * @return text without any HTML, or null if the text is null
+	 *
+	 * @see HTMLCleaner#stripHTML(String)
+	 */
+	public static String stripHTML(CharSequence html) {
+		if (html == null) {
+			return null;
+		}
+		StringWriter writer = new StringWriter(html.length());
+		try (HTMLStripper stripper = new HTMLStripper(writer)) {
+			stripper.append(html);
+		}
+		catch (IOException e) {
+			// A string writer never throws
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Removes the HTML from the text of a reader and parses the remaining
+	 * text into words as it is read, without ever holding the whole text.
+	 *
+	 * @param reader
+	 *            reader of the text to clean and parse
+	 * @param sink
+	 *            sink to pass each word and its position to, starting at
+	 *            position 1
+	 * @return number of words found
+	 * @throws IOException
+	 *
+	 * @see WordParser#parseWords(CharSequence, ObjIntConsumer)
+	 */
+	public static int parseWords(Reader reader, ObjIntConsumer<String> sink) throws IOException {
+		WordParser.WordWriter words = new WordParser.WordWriter(sink);
+		try (HTMLStripper stripper = new HTMLStripper(words)) {
+			char[] buffer = new char[BUFFER_SIZE];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				stripper.write(buffer, 0, read);
+			}
+		}
+		return words.getCount();
+	}
+
+	/**
+	 * Removes the HTML from a buffer of text and parses the remaining text
+	 * into words. Consumes the remaining characters of the buffer.
+	 *
+	 * @param html
+	 *            buffer of the text to clean and parse
+	 * @param sink
+	 *            sink to pass each word and its position to, starting at
+	 *            position 1
+	 * @return number of words found
+	 */
+	public static int parseWords(CharBuffer html, ObjIntConsumer<String> sink) {
+		WordParser.WordWriter words = new WordParser.WordWriter(sink);
+		try (HTMLStripper stripper = new HTMLStripper(words)) {
+			char[] buffer = new char[BUFFER_SIZE];
+			while (html.hasRemaining()) {
+				int read = Math.min(buffer.length, html.remaining());
+				html.get(buffer, 0, read);
+				stripper.write(buffer, 0, read);
+			}
+		}
+		catch (IOException e) {
+			// A word writer never throws
+		}
+		return words.getCount();
+	}
+
+
+	/**
+	 * One step of the cleaner, which removes one kind of construct and passes
+	 * every other character on to the next step. Runs of characters outside
+	 * of any construct are passed on together, so only the characters of the
+	 * constructs go through the state machine one at a time.
+	 */
+	private static abstract class Stage {
+
+		/** Step to pass the remaining characters to. */
+		protected final Stage next;
+
+		/** Character that starts a construct. */
+		private final char start;
+
+		/** Whether a construct has started and not ended or failed yet. */
+		protected boolean active;
+
+		/** Characters of the current construct so far. */
+		protected char[] held;
+		protected int heldLength;
+
+		private final char[] single;
+
+		/**
+		 * @param start
+		 *            character that starts a construct
+		 * @param next
+		 *            step to pass the remaining characters to
+		 */
+		public Stage(char start, Stage next) {
+			this.next = next;
+			this.start = start;
+			this.active = false;
+			this.held = new char[64];
+			this.heldLength = 0;
+			this.single = new char[1];
+		}
+
+		/**
+		 * Processes the next characters of the text.
+		 *
+		 * @param cbuf
+		 *            array of characters
+		 * @param off
+		 *            offset of the first character
+		 * @param len
+		 *            number of characters
+		 * @throws IOException
+		 */
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			int end = off + len;
+			int run = off;
+			for (int i = off; i < end; i++) {
+				char c = cbuf[i];
+				if (!active && c != start) {
+					continue;
+				}
+				if (i > run) {
+					next.write(cbuf, run, i - run);
+				}
+				run = i + 1;
+				step(c);
+			}
+			if (end > run) {
+				next.write(cbuf, run, end - run);
+			}
+		}
+
+		/**
+		 * Moves the state machine one character forward. Only called for
+		 * characters that start or continue a construct.
+		 *
+		 * @param c
+		 *            next character
+		 * @throws IOException
+		 */
+		protected abstract void step(char c) throws IOException;
+
+		/**
+		 * Passes on the characters that were held back, once the text has
+		 * ended, and ends the next steps.
+		 *
+		 * @throws IOException
+		 */
+		public void finish() throws IOException {
+			passHeld();
+			active = false;
+			next.finish();
+		}
+
+		/**
+		 * Flushes the characters that were passed on.
+		 *
+		 * @throws IOException
+		 */
+		public void flush() throws IOException {
+			next.flush();
+		}
+
+		/**
+		 * Holds back a character of the current construct.
+		 */
+		protected void hold(char c) {
+			if (heldLength == held.length) {
+				held = Arrays.copyOf(held, held.length * 2);
+			}
+			held[heldLength++] = c;
+		}
+
+		/**
+		 * Passes on the characters that were held back.
+		 *
+		 * @throws IOException
+		 */
+		protected void passHeld() throws IOException {
+			if (heldLength > 0) {
+				next.write(held, 0, heldLength);
+				heldLength = 0;
+			}
+		}
+
+		/**
+		 * Passes on a single character.
+		 *
+		 * @throws IOException
+		 */
+		protected void pass(char c) throws IOException {
+			single[0] = c;
+			next.write(single, 0, 1);
+		}
+
+		/**
+		 * Replaces the construct that was held back with a single space.
+		 *
+		 * @throws IOException
+		 */
+		protected void replace() throws IOException {
+			heldLength = 0;
+			active = false;
+			pass(' ');
+		}
+	}
+
+	/**
+	 * Removes the comments matched by {@code <!--(?s).*?-->}.
+	 */
+	private static class CommentStage extends Stage {
+
+		private static final String OPEN = "<!--";
+
+		private boolean inside;
+		private int dashes;
+
+		public CommentStage(Stage next) {
+			super('<', next);
+			this.inside = false;
+			this.dashes = 0;
+		}
+
+		@Override
+		protected void step(char c) throws IOException {
+			if (inside) {
+				hold(c);
+				if (c == '-') {
+					dashes++;
+				} else if (c == '>' && dashes >= 2) {
+					inside = false;
+					replace();
+				} else {
+					dashes = 0;
+				}
+			} else if (c == OPEN.charAt(heldLength)) {
+				hold(c);
+				active = true;
+				if (heldLength == OPEN.length()) {
+					inside = true;
+					dashes = 0;
+				}
+			} else {
+				// Only the first character of the opening can start it again
+				passHeld();
+				if (c == '<') {
+					hold(c);
+				} else {
+					active = false;
+					pass(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the elements matched by
+	 * {@code <(?i)name(?s).*?>(?s).*?</(?i)name(?s).*?>}. The name is only
+	 * compared without case for ASCII letters.
+	 */
+	private static class ElementStage extends Stage {
+
+		/** Looking for the rest of the start of the opening tag. */
+		private static final int OPEN = 0;
+
+		/** Looking for the end of the opening tag. */
+		private static final int OPENING = 1;
+
+		/** Looking for the start of the closing tag. */
+		private static final int CONTENT = 2;
+
+		/** Looking for the end of the closing tag. */
+		private static final int CLOSING = 3;
+
+		private final String open;
+		private final String close;
+		private int state;
+
+		/** Number of characters of the closing tag matched so far. */
+		private int matched;
+
+		/**
+		 * @param name
+		 *            lowercase name of the element
+		 * @param next
+		 *            step to pass the remaining characters to
+		 */
+		public ElementStage(String name, Stage next) {
+			super('<', next);
+			this.open = "<" + name;
+			this.close = "</" + name;
+			this.state = OPEN;
+			this.matched = 0;
+		}
+
+		@Override
+		protected void step(char c) throws IOException {
+			switch (state) {
+			case OPEN:
+				if (matches(c, open.charAt(heldLength))) {
+					hold(c);
+					active = true;
+					if (heldLength == open.length()) {
+						state = OPENING;
+					}
+				} else {
+					// Only the first character of the opening can start it again
+					passHeld();
+					if (c == '<') {
+						hold(c);
+					} else {
+						active = false;
+						pass(c);
+					}
+				}
+				break;
+			case OPENING:
+				hold(c);
+				if (c == '>') {
+					state = CONTENT;
+					matched = 0;
+				}
+				break;
+			case CONTENT:
+				hold(c);
+				if (matches(c, close.charAt(matched))) {
+					matched++;
+					if (matched == close.length()) {
+						state = CLOSING;
+					}
+				} else {
+					matched = c == '<' ? 1 : 0;
+				}
+				break;
+			default:
+				if (c == '>') {
+					state = OPEN;
+					replace();
+				} else {
+					hold(c);
+				}
+				break;
+			}
+		}
+
+		/**
+		 * Compares a character to a lowercase character of a tag, ignoring
+		 * case only for ASCII letters.
+		 */
+		private static boolean matches(char c, char expected) {
+			return c == expected || (expected >= 'a' && expected <= 'z' && c == expected - ('a' - 'A'));
+		}
+	}
+
+	/**
+	 * Removes the tags matched by {@code <(?s).*?>}.
+	 */
+	private static class TagStage extends Stage {
+
+		public TagStage(Stage next) {
+			super('<', next);
+		}
+
+		@Override
+		protected void step(char c) throws IOException {
+			if (c == '>' && active) {
+				replace();
+			} else {
+				hold(c);
+				active = true;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entities matched by {@code &\S.+?;}. Unlike the other
+	 * constructs, an entity that fails to match does not leave the rest of
+	 * the text unmatched, so the characters after its ampersand are scanned
+	 * again. An entity can never span a line terminator, so at most one line
+	 * is ever held back.
+	 */
+	private static class EntityStage extends Stage {
+
+		/** Looking for an ampersand. */
+		private static final int TEXT = 0;
+
+		/** Looking for the character matched by {@code \S}. */
+		private static final int FIRST = 1;
+
+		/** After a high surrogate matched by {@code \S}. */
+		private static final int SURROGATE = 2;
+
+		/** Looking for the first character matched by {@code .+?}. */
+		private static final int SECOND = 3;
+
+		/** Looking for the semicolon. */
+		private static final int REST = 4;
+
+		private int state;
+
+		public EntityStage(Stage next) {
+			super('&', next);
+			this.state = TEXT;
+		}
+
+		@Override
+		protected void step(char c) throws IOException {
+			if (!advance(c)) {
+				hold(c);
+				retry();
+			}
+		}
+
+		/**
+		 * Moves the state machine one character forward.
+		 *
+		 * @param c
+		 *            next character
+		 * @return false if the character makes the entity fail to match
+		 * @throws IOException
+		 */
+		private boolean advance(char c) throws IOException {
+			switch (state) {
+			case TEXT:
+				if (c == '&') {
+					hold(c);
+					active = true;
+					state = FIRST;
+				} else {
+					pass(c);
+				}
+				return true;
+			case FIRST:
+				if (c == ' ' || (c >= '\t' && c <= '\r')) {
+					return false;
+				}
+				hold(c);
+				state = Character.isHighSurrogate(c) ? SURROGATE : SECOND;
+				return true;
+			case SURROGATE:
+				state = SECOND;
+				if (Character.isLowSurrogate(c)) {
+					hold(c);
+					return true;
+				}
+				return advance(c);
+			case SECOND:
+				if (isLineTerminator(c)) {
+					return false;
+				}
+				hold(c);
+				state = REST;
+				return true;
+			default:
+				if (c == ';') {
+					state = TEXT;
+					replace();
+					return true;
+				}
+				if (isLineTerminator(c)) {
+					return false;
+				}
+				hold(c);
+				return true;
+			}
+		}
+
+		/**
+		 * Passes on the ampersand of an entity that failed to match, and
+		 * scans the characters after it again. Characters are scanned again
+		 * in a loop rather than recursively, so a long line of ampersands
+		 * can not overflow the stack.
+		 *
+		 * @throws IOException
+		 */
+		private void retry() throws IOException {
+			boolean failed = true;
+			while (failed) {
+				pass(held[0]);
+				char[] rest = Arrays.copyOfRange(held, 1, heldLength);
+				heldLength = 0;
+				active = false;
+				state = TEXT;
+
+				failed = false;
+				for (int i = 0; i < rest.length && !failed; i++) {
+					if (!advance(rest[i])) {
+						// Start over from the next ampersand with the rest of the text
+						for (int j = i; j < rest.length; j++) {
+							hold(rest[j]);
+						}
+						failed = true;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Tests whether a character is a line terminator, which {@code .}
+		 * does not match.
+		 */
+		private static boolean isLineTerminator(char c) {
+			return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+		}
+
+		@Override
+		public void finish() throws IOException {
+			// No entity can be completed any more
+			while (state != TEXT) {
+				retry();
+			}
+			next.finish();
+		}
+	}
+
+	/**
+	 * Writes the remaining characters to a writer.
+	 */
+	private static class Output extends Stage {
+
+		private final Writer out;
+
+		public Output(Writer out) {
+			super('\0', null);
+			this.out = out;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			out.write(cbuf, off, len);
+		}
+
+		@Override
+		protected void step(char c) throws IOException {
+			out.write(c);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void finish() throws IOException {
+			out.close();
+		}
+	}
+}
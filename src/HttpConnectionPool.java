@@ -0,0 +1,930 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps persistent HTTP/1.1 connections open between fetches, so pages on the
+ * same host reuse a connection instead of paying for a new one every time.
+ * Each host has at most a fixed number of connections open at once, and a
+ * thread that needs another connection to a busy host waits for one to be
+ * returned. Connections that stay idle for too long are closed.
+ *
+ * Responses are read exactly to their end, using their Content-Length or
+ * chunked framing, so the next request can be sent on the same connection.
+ * A response without either ends when the server closes the connection, and
+ * that connection is not reused. The body of a HTML page can be streamed
+ * into a writer as it is read, so a page is never held in memory whole.
+ *
+ * Connections are opened and read with the timeouts of the {@link FetchLimits}
+ * of the pool, and every fetch must end within its deadline once a request is
+ * sent, so a slow host never holds a thread forever, even one that keeps
+ * sending a byte just before each read times out. The heads of a response
+ * are held to the same size limit as the body of a page.
+ *
+ * @author Anthony Panisales
+ */
+public class HttpConnectionPool implements Closeable {
+
+	/** The default largest number of connections open to one host. */
+	public static final int DEFAULT_PER_HOST = 6;
+
+	/** The default time a connection may stay idle, in milliseconds. */
+	public static final long DEFAULT_IDLE_MILLIS = 15 * 1000;
+
+	/** Size of the buffers bodies are read through. */
+	private static final int BUFFER_SIZE = 8192;
+
+	private final int maxPerHost;
+	private final long idleMillis;
+	private final FetchLimits limits;
+	private final CrawlStatistics statistics;
+
+	/** Pool of each host, keyed by host and port. */
+	private final Map<String, Host> hosts;
+
+	private boolean closed;
+
+	/**
+	 * Initializes a pool with the default limits.
+	 *
+	 * @see #HttpConnectionPool(int, long)
+	 */
+	public HttpConnectionPool() {
+		this(DEFAULT_PER_HOST, DEFAULT_IDLE_MILLIS);
+	}
+
+	/**
+	 * Initializes a pool with the default fetch limits.
+	 *
+	 * @param maxPerHost
+	 *            largest number of connections open to one host
+	 * @param idleMillis
+	 *            time a connection may stay idle before it is closed, in
+	 *            milliseconds
+	 *
+	 * @see #HttpConnectionPool(int, long, FetchLimits, CrawlStatistics)
+	 */
+	public HttpConnectionPool(int maxPerHost, long idleMillis) {
+		this(maxPerHost, idleMillis, FetchLimits.DEFAULT, new CrawlStatistics());
+	}
+
+	/**
+	 * Initializes a pool.
+	 *
+	 * @param maxPerHost
+	 *            largest number of connections open to one host
+	 * @param idleMillis
+	 *            time a connection may stay idle before it is closed, in
+	 *            milliseconds
+	 * @param limits
+	 *            limits to abort fetches of HTML pages at
+	 * @param statistics
+	 *            statistics to count how each fetch of a HTML page ends in
+	 */
+	public HttpConnectionPool(int maxPerHost, long idleMillis, FetchLimits limits, CrawlStatistics statistics) {
+		this.maxPerHost = Math.max(maxPerHost, 1);
+		this.idleMillis = idleMillis;
+		this.limits = limits;
+		this.statistics = statistics;
+		this.hosts = new HashMap<>();
+		this.closed = false;
+	}
+
+	/**
+	 * Fetches a URL with a GET request on a pooled connection. A reused
+	 * connection may have been closed by the server in the meantime, in which
+	 * case the request is sent once more on a new connection.
+	 *
+	 * @param url
+	 *            url to fetch
+	 * @return the lines of the response, like
+	 *         {@link LinkParser#fetchLines(URL, String)}
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public List<String> fetchLines(URL url) throws IOException, InterruptedException {
+		return fetch(url, null).lines;
+	}
+
+	/**
+	 * Fetches a URL with a GET request on a pooled connection, and streams the
+	 * body of the response into a writer if its headers say it is HTML. The
+	 * body is decoded through a buffer of a fixed size as it is read, so no
+	 * copy of the page is ever kept and its line endings are left as they
+	 * are.
+	 *
+	 * The fetch is aborted as soon as the headers say the page is not HTML or
+	 * is larger than the limit, without reading its body, or once more of
+	 * the body than the limit has been read. An aborted connection is
+	 * closed instead of reused. How the fetch ends is counted in the
+	 * statistics of the pool.
+	 *
+	 * @param url
+	 *            url to fetch
+	 * @param html
+	 *            writer to stream the HTML of the page into, which is not
+	 *            closed
+	 * @return true if the page was HTML and was written whole, false if it
+	 *         was not HTML
+	 * @throws IOException
+	 *             if the page could not be fetched, took too long or was too
+	 *             large, in which case some of it may have been written
+	 *             already
+	 * @throws InterruptedException
+	 */
+	public boolean fetchHTML(URL url, Writer html) throws IOException, InterruptedException {
+		CrawlStatistics.Outcome outcome = CrawlStatistics.Outcome.FAILED;
+		try {
+			boolean isHTML = fetch(url, html).html;
+			outcome = isHTML ? CrawlStatistics.Outcome.FETCHED : CrawlStatistics.Outcome.NOT_HTML;
+			return isHTML;
+		}
+		catch (ConnectTimeoutException e) {
+			outcome = CrawlStatistics.Outcome.CONNECT_TIMEOUT;
+			throw e;
+		}
+		catch (SocketTimeoutException e) {
+			outcome = CrawlStatistics.Outcome.READ_TIMEOUT;
+			throw e;
+		}
+		catch (TooLargeException e) {
+			outcome = CrawlStatistics.Outcome.TOO_LARGE;
+			throw e;
+		}
+		finally {
+			statistics.count(outcome);
+		}
+	}
+
+	/**
+	 * Returns the statistics of the fetches of HTML pages.
+	 *
+	 * @return statistics of the pool
+	 */
+	public CrawlStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Fetches a URL on a pooled connection, sending the request once more on
+	 * a new connection if a reused connection fails before the response
+	 * starts. A timeout is never retried, since a slow host would only make
+	 * the crawl wait twice as long.
+	 */
+	private Response fetch(URL url, Writer html) throws IOException, InterruptedException {
+		String request = LinkParser.craftHTTPRequest(url, LinkParser.HTTP.GET, true);
+		Connection connection = acquire(url);
+		boolean reused = connection.used;
+		try {
+			return fetch(connection, request, html);
+		}
+		catch (IOException e) {
+			if (!reused || connection.responded || e instanceof SocketTimeoutException) {
+				throw e;
+			}
+		}
+
+		// The server closed the idle connection before it was reused
+		connection = acquire(url);
+		return fetch(connection, request, html);
+	}
+
+	/**
+	 * Sends a request on a connection and reads its response, returning the
+	 * connection to the pool if it can be reused and closing it otherwise.
+	 */
+	private Response fetch(Connection connection, String request, Writer html) throws IOException {
+		boolean reusable = false;
+		try {
+			connection.used = true;
+			connection.responded = false;
+			Deadline deadline = new Deadline(limits.getFetchMillis());
+			OutputStream out = connection.socket.getOutputStream();
+			out.write(request.getBytes(StandardCharsets.UTF_8));
+			out.flush();
+
+			Head head = readHead(connection.in, limits.getMaxBytes(), deadline);
+			connection.responded = true;
+			Response response = read(head, connection.in, html, limits.getMaxBytes(), deadline);
+			reusable = response.reusable;
+			return response;
+		}
+		finally {
+			release(connection, reusable);
+		}
+	}
+
+	/**
+	 * Returns an idle connection to the host of a URL, or opens a new one,
+	 * waiting while the host already has as many connections as allowed.
+	 */
+	private Connection acquire(URL url) throws IOException, InterruptedException {
+		String hostname = url.getHost();
+		int port = url.getPort() < 0 ? LinkParser.DEFAULT_PORT : url.getPort();
+		String key = hostname + ":" + port;
+
+		Host host;
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("Connection pool is closed");
+			}
+			evictIdle();
+
+			host = hosts.get(key);
+			if (host == null) {
+				host = new Host();
+				hosts.put(key, host);
+			}
+
+			while (host.idle.isEmpty() && host.open >= maxPerHost) {
+				wait();
+			}
+
+			if (!host.idle.isEmpty()) {
+				return host.idle.pollLast();
+			}
+			host.open++;
+		}
+
+		Socket socket = new Socket();
+		try {
+			try {
+				socket.connect(new InetSocketAddress(hostname, port), limits.getConnectMillis());
+			}
+			catch (SocketTimeoutException e) {
+				throw new ConnectTimeoutException(key);
+			}
+			socket.setSoTimeout(limits.getReadMillis());
+			// Requests are written whole, so waiting to fill a packet only adds delay
+			socket.setTcpNoDelay(true);
+			return new Connection(host, socket);
+		}
+		catch (IOException | RuntimeException e) {
+			try {
+				socket.close();
+			}
+			catch (IOException closing) {
+				// Nothing left to do with it
+			}
+			synchronized (this) {
+				host.open--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool, or closes it if it can not be reused.
+	 */
+	private void release(Connection connection, boolean reusable) {
+		synchronized (this) {
+			if (reusable && !closed) {
+				connection.idleSince = System.currentTimeMillis();
+				connection.host.idle.addLast(connection);
+				notifyAll();
+				return;
+			}
+			connection.host.open--;
+			notifyAll();
+		}
+		connection.close();
+	}
+
+	/**
+	 * Closes every connection that has been idle for too long.
+	 */
+	public synchronized void evictIdle() {
+		long oldest = System.currentTimeMillis() - idleMillis;
+		Iterator<Host> hostIterator = hosts.values().iterator();
+		while (hostIterator.hasNext()) {
+			Host host = hostIterator.next();
+			// Connections are returned to the end, so the oldest come first
+			while (!host.idle.isEmpty() && host.idle.peekFirst().idleSince < oldest) {
+				host.idle.pollFirst().close();
+				host.open--;
+			}
+			if (host.open == 0) {
+				hostIterator.remove();
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns the number of connections that are open, idle or in use.
+	 *
+	 * @return number of open connections
+	 */
+	public synchronized int size() {
+		int open = 0;
+		for (Host host : hosts.values()) {
+			open += host.open;
+		}
+		return open;
+	}
+
+	/**
+	 * Closes every idle connection. Connections in use are closed once they
+	 * are returned.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		for (Host host : hosts.values()) {
+			while (!host.idle.isEmpty()) {
+				host.idle.pollFirst().close();
+				host.open--;
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Reads a whole response from a stream, using its Content-Length or
+	 * chunked framing if it has one.
+	 *
+	 * @param in
+	 *            stream of the response
+	 * @return the lines of the response, with the body decoded from its
+	 *         framing
+	 * @throws IOException
+	 *             if the response ends before its framing says it should
+	 */
+	public static List<String> readLines(InputStream in) throws IOException {
+		return read(readHead(in, Long.MAX_VALUE, Deadline.NONE), in, null, Long.MAX_VALUE, Deadline.NONE).lines;
+	}
+
+	/**
+	 * Reads the status line and header lines of a response, and nothing of
+	 * its body.
+	 *
+	 * @param in
+	 *            stream of the response
+	 * @return the status line and header lines, ending with an empty line
+	 * @throws IOException
+	 *             if the response ends before its first line
+	 */
+	public static List<String> readHeaders(InputStream in) throws IOException {
+		return readHead(in, Long.MAX_VALUE, Deadline.NONE).lines;
+	}
+
+	/**
+	 * Reads the status line and header fields of a response. Interim 1xx
+	 * responses, which have no body and come before the final response on
+	 * the same connection, are skipped. A 101 response is final, since the
+	 * connection no longer speaks HTTP after it.
+	 *
+	 * @param in
+	 *            stream of the connection
+	 * @param maxBytes
+	 *            largest number of bytes all the heads together may take
+	 * @param deadline
+	 *            deadline of the fetch
+	 * @return head of the final response
+	 * @throws IOException
+	 *             if the response is cut short, its heads are too large, or
+	 *             the deadline passed
+	 */
+	private static Head readHead(InputStream in, long maxBytes, Deadline deadline) throws IOException {
+		long allowed = maxBytes;
+		Head head;
+		do {
+			head = readInterimHead(in, allowed, deadline);
+			allowed -= head.size;
+		} while (isInterim(head.getCode()));
+		return head;
+	}
+
+	/**
+	 * Tests whether a status code is of an interim response, which is
+	 * followed by another response to the same request.
+	 *
+	 * @param code
+	 *            status code of a response
+	 * @return true if the code is 1xx other than 101
+	 */
+	static boolean isInterim(int code) {
+		return code >= 100 && code < 200 && code != 101;
+	}
+
+	/**
+	 * Parses the status code of a status line.
+	 *
+	 * @param status
+	 *            status line of a response
+	 * @return status code, or 0 if the status line has none
+	 */
+	static int parseCode(String status) {
+		String[] parts = status.split(" ", 3);
+		return parts.length > 1 && parts[1].matches("\\d{3}") ? Integer.parseInt(parts[1]) : 0;
+	}
+
+	/**
+	 * Reads the status line and header fields of a single response, which
+	 * may be interim.
+	 */
+	private static Head readInterimHead(InputStream in, long maxBytes, Deadline deadline) throws IOException {
+		byte[] status = readLine(in, maxBytes, deadline);
+		if (status == null) {
+			throw new EOFException("Connection closed before the response");
+		}
+		Head head = new Head(decode(status));
+		head.size = status.length;
+
+		byte[] bytes;
+		while ((bytes = readLine(in, maxBytes - head.size, deadline)) != null) {
+			head.size += bytes.length;
+			String line = decode(bytes);
+			if (line.isEmpty()) {
+				break;
+			}
+			head.lines.add(line);
+			String[] pair = line.split(":", 2);
+			if (pair.length == 2) {
+				head.fields.put(pair[0].trim().toLowerCase(), pair[1].trim());
+			}
+		}
+		head.lines.add("");
+		return head;
+	}
+
+	/**
+	 * Reads the body of a response. Without a writer, the lines of the
+	 * response are returned with the lines of the body. With a writer, the
+	 * body is streamed into it if the response is HTML, and left unread
+	 * otherwise.
+	 *
+	 * @param head
+	 *            head of the response, already read
+	 * @param in
+	 *            stream of the connection
+	 * @param html
+	 *            writer to stream HTML into, or null to return the lines
+	 * @param maxBytes
+	 *            largest size of the body, in bytes
+	 * @param deadline
+	 *            deadline of the fetch
+	 * @return the response, and whether the connection can be reused
+	 * @throws IOException
+	 *             if the response is cut short, its body is larger than the
+	 *             limit, or the deadline passed
+	 */
+	private static Response read(Head head, InputStream in, Writer html, long maxBytes, Deadline deadline)
+			throws IOException {
+		boolean isHTML = html != null && LinkParser.isHTML(head.lines);
+		// A page that is not HTML is never read, whatever its size
+		Body body = new Body(head, in, html == null || isHTML ? maxBytes : Long.MAX_VALUE, deadline);
+
+		if (html == null) {
+			String text = new String(body.readAll(), StandardCharsets.UTF_8);
+			try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					head.lines.add(line);
+				}
+			}
+		} else if (isHTML) {
+			Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8);
+			char[] buffer = new char[BUFFER_SIZE];
+			int count;
+			while ((count = reader.read(buffer)) != -1) {
+				html.write(buffer, 0, count);
+			}
+		}
+
+		// A body that is left unread can not be skipped without reading it
+		// A 101 response hands the connection over to another protocol
+		boolean reusable = head.status.startsWith(LinkParser.version) && head.getCode() >= 200
+				&& !"close".equalsIgnoreCase(head.fields.get("connection")) && body.isFramed() && body.isDone();
+		return new Response(head.lines, reusable, isHTML);
+	}
+
+	/**
+	 * Parses a Content-Length value.
+	 */
+	private static long parseLength(String length) throws IOException {
+		try {
+			long value = Long.parseLong(length);
+			if (value >= 0) {
+				return value;
+			}
+		}
+		catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new IOException("Invalid Content-Length: " + length);
+	}
+
+	/**
+	 * Reads a line of a header, ending with a line feed and an optional
+	 * carriage return before it. The deadline is checked before every read,
+	 * so a server that sends a line a byte at a time cannot outlast it.
+	 *
+	 * @param in
+	 *            stream of the connection
+	 * @param maxBytes
+	 *            largest number of bytes the line may take, with its end
+	 * @param deadline
+	 *            deadline of the fetch
+	 * @return bytes of the line with its end, or null if the stream ended
+	 *         first
+	 * @throws IOException
+	 *             if the line is too large, or the deadline passed
+	 */
+	private static byte[] readLine(InputStream in, long maxBytes, Deadline deadline) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		do {
+			if (line.size() >= maxBytes) {
+				throw new TooLargeException(-1);
+			}
+			deadline.check();
+			b = in.read();
+			if (b < 0) {
+				return line.size() == 0 ? null : line.toByteArray();
+			}
+			line.write(b);
+		} while (b != '\n');
+		return line.toByteArray();
+	}
+
+	/**
+	 * Decodes a line of a header, without its line feed and carriage return.
+	 */
+	private static String decode(byte[] line) {
+		int length = line.length;
+		if (length > 0 && line[length - 1] == '\n') {
+			length--;
+		}
+		if (length > 0 && line[length - 1] == '\r') {
+			length--;
+		}
+		return new String(line, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Holds the status line and header fields of a response.
+	 */
+	private static class Head {
+
+		private final String status;
+
+		/** Lines of the response read so far, starting with the status line. */
+		private final List<String> lines;
+
+		/** Header fields, keyed by their name in lowercase. */
+		private final Map<String, String> fields;
+
+		/** Number of bytes the head took, with its line ends. */
+		private long size;
+
+		public Head(String status) {
+			this.status = status;
+			this.lines = new ArrayList<>();
+			this.lines.add(status);
+			this.fields = new HashMap<>();
+		}
+
+		/**
+		 * Returns the status code, or 0 if the status line has none.
+		 */
+		private int getCode() {
+			return parseCode(status);
+		}
+	}
+
+	/**
+	 * Reads the body of a response from the stream of its connection, and
+	 * ends exactly where its Content-Length or chunked framing says it does.
+	 * A body without either ends when the server closes the connection.
+	 */
+	private static class Body extends InputStream {
+
+		private final InputStream in;
+		private final boolean chunked;
+		private final boolean framed;
+		private final Deadline deadline;
+
+		/** Number of bytes of the body that may still be read. */
+		private long allowed;
+
+		/** Bytes left in the body or in the current chunk. */
+		private long remaining;
+
+		/** Whether a chunk has been read, so the next size is after its end. */
+		private boolean started;
+
+		private boolean done;
+
+		public Body(Head head, InputStream in, long maxBytes, Deadline deadline) throws IOException {
+			this.in = in;
+			this.allowed = maxBytes;
+			this.deadline = deadline;
+			int code = head.getCode();
+			String length = head.fields.get("content-length");
+			String encoding = head.fields.get("transfer-encoding");
+
+			if ((code >= 100 && code < 200) || code == 204 || code == 304) {
+				this.chunked = false;
+				this.framed = true;
+				this.remaining = 0;
+			} else if (encoding != null && encoding.toLowerCase().endsWith("chunked")) {
+				this.chunked = true;
+				this.framed = true;
+				this.remaining = 0;
+			} else if (length != null) {
+				this.chunked = false;
+				this.framed = true;
+				this.remaining = parseLength(length);
+			} else {
+				this.chunked = false;
+				this.framed = false;
+				this.remaining = -1;
+			}
+			this.started = false;
+			this.done = framed && !chunked && remaining == 0;
+
+			if (framed && !chunked && remaining > allowed) {
+				throw new TooLargeException(remaining);
+			}
+		}
+
+		/**
+		 * Returns whether the body ends by its framing, so the connection is
+		 * left at the start of the next response.
+		 */
+		private boolean isFramed() {
+			return framed;
+		}
+
+		/**
+		 * Returns whether the whole body has been read.
+		 */
+		private boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Counts bytes read from the body against the limit.
+		 */
+		private int allow(int count) throws IOException {
+			allowed -= count;
+			if (allowed < 0) {
+				throw new TooLargeException(-1);
+			}
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (done) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			// Each read waits at most the read timeout, so this bounds the whole body
+			deadline.check();
+			if (!framed) {
+				int count = in.read(b, off, len);
+				done = count < 0;
+				return done ? count : allow(count);
+			}
+			if (chunked && remaining == 0 && !nextChunk()) {
+				return -1;
+			}
+
+			int count = in.read(b, off, (int) Math.min(len, remaining));
+			if (count < 0) {
+				throw new EOFException("Connection closed inside a body");
+			}
+			remaining -= count;
+			done = !chunked && remaining == 0;
+			return allow(count);
+		}
+
+		/**
+		 * Reads the size of the next chunk, and any trailer fields after the
+		 * last chunk.
+		 *
+		 * @return false if the body has ended
+		 */
+		private boolean nextChunk() throws IOException {
+			if (started) {
+				// Ends the previous chunk
+				readLine(in, BUFFER_SIZE, deadline);
+			}
+			started = true;
+
+			byte[] bytes = readLine(in, BUFFER_SIZE, deadline);
+			if (bytes == null) {
+				throw new EOFException("Connection closed inside a chunked body");
+			}
+			String line = decode(bytes);
+			int extension = line.indexOf(';');
+			String size = (extension < 0 ? line : line.substring(0, extension)).trim();
+			try {
+				remaining = Long.parseLong(size, 16);
+			}
+			catch (NumberFormatException e) {
+				throw new IOException("Invalid chunk size: " + line);
+			}
+			if (remaining < 0) {
+				throw new IOException("Invalid chunk size: " + line);
+			}
+			if (remaining > allowed) {
+				throw new TooLargeException(-1);
+			}
+			if (remaining > 0) {
+				return true;
+			}
+
+			byte[] trailer;
+			while ((trailer = readLine(in, BUFFER_SIZE, deadline)) != null && !decode(trailer).isEmpty()) {
+				// Trailer fields are not needed
+			}
+			done = true;
+			return false;
+		}
+
+		/**
+		 * Reads the rest of the body.
+		 */
+		private byte[] readAll() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+			return bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Holds the time a fetch must end by, counted from when its request was
+	 * sent. Reads still wait at most the read timeout each, so a fetch ends
+	 * at most that long after its deadline.
+	 */
+	private static class Deadline {
+
+		/** A deadline that never passes. */
+		private static final Deadline NONE = new Deadline(0);
+
+		/** Whether the fetch has a deadline. */
+		private final boolean timed;
+
+		/** Time to abort the fetch at, from {@link System#nanoTime()}. */
+		private final long end;
+
+		/**
+		 * @param millis
+		 *            time the fetch may take from now, in milliseconds, or 0
+		 *            to take as long as needed
+		 */
+		public Deadline(int millis) {
+			this.timed = millis > 0;
+			this.end = System.nanoTime() + millis * 1000000L;
+		}
+
+		/**
+		 * Aborts the fetch if its deadline has passed.
+		 *
+		 * @throws SocketTimeoutException
+		 *             if the deadline has passed
+		 */
+		private void check() throws SocketTimeoutException {
+			if (timed && System.nanoTime() - end > 0) {
+				throw new SocketTimeoutException("Fetch took longer than its deadline");
+			}
+		}
+	}
+
+	/**
+	 * Holds the connections to a single host.
+	 */
+	private static class Host {
+
+		/** Idle connections, from the longest idle to the most recently used. */
+		private final ArrayDeque<Connection> idle;
+
+		/** Number of connections open, idle or in use. */
+		private int open;
+
+		public Host() {
+			this.idle = new ArrayDeque<>();
+			this.open = 0;
+		}
+	}
+
+	/**
+	 * Holds a single connection.
+	 */
+	private static class Connection {
+
+		private final Host host;
+		private final Socket socket;
+		private final InputStream in;
+		private long idleSince;
+
+		/** Whether a request has been sent on the connection before. */
+		private boolean used;
+
+		/** Whether the server started the response to the last request. */
+		private boolean responded;
+
+		public Connection(Host host, Socket socket) throws IOException {
+			this.host = host;
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.idleSince = 0;
+			this.used = false;
+			this.responded = false;
+		}
+
+		public void close() {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				// Nothing left to do with it
+			}
+		}
+	}
+
+	/**
+	 * Thrown when the heads or the body of a response are larger than the
+	 * limit.
+	 */
+	private static class TooLargeException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @param length
+		 *            length of the body given by its headers, or -1 if the
+		 *            response went over the limit while it was read
+		 */
+		public TooLargeException(long length) {
+			super(length < 0 ? "Response is larger than the limit"
+					: "Body of " + length + " bytes is larger than the limit");
+		}
+	}
+
+	/**
+	 * Thrown when a host does not accept a connection in time, to tell it
+	 * apart from a response that stops for too long.
+	 */
+	private static class ConnectTimeoutException extends SocketTimeoutException {
+
+		private static final long serialVersionUID = 1L;
+
+		public ConnectTimeoutException(String host) {
+			super("Connecting to " + host + " timed out");
+		}
+	}
+
+	/**
+	 * Holds the lines of a response, whether its body was HTML streamed into
+	 * a writer, and whether its connection can be reused.
+	 */
+	private static class Response {
+
+		private final List<String> lines;
+		private final boolean reusable;
+		private final boolean html;
+
+		public Response(List<String> lines, boolean reusable, boolean html) {
+			this.lines = lines;
+			this.reusable = reusable;
+			this.html = html;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compares how long it takes to build an inverted index from a directory of
+ * HTML files with multiple threads. Builds are timed using either the work
+ * queue or a fork/join pool, and with all worker threads sharing one index
+ * or with each worker thread building its own private index that is merged
+ * at the end.
+ *
+ * <pre>
+ * java IndexBenchmark -path path [-threads num] [-rounds num]
+ * </pre>
+ *
+ * @author Anthony Panisales
+ */
+public class IndexBenchmark {
+
+	/** Names of the ways an index can be built. */
+	private static final String[] MODES = {
+			"Work queue, shared index",
+			"Work queue, private indexes",
+			"Fork/join, shared index",
+			"Fork/join, private indexes"
+	};
+
+	public static void main(String[] args) throws Exception {
+		ArgumentMap argMap = new ArgumentMap(args);
+
+		if (!argMap.hasValue("-path")) {
+			System.out.println("Usage: java IndexBenchmark -path path [-threads num] [-rounds num]");
+			return;
+		}
+
+		Path indexInput = Paths.get(argMap.getString("-path")).normalize();
+		if (Files.notExists(indexInput)) {
+			System.out.println("Path does not exist: " + indexInput);
+			return;
+		}
+
+		int numOfThreads = argMap.getInteger("-threads", WorkQueue.DEFAULT);
+		int rounds = Math.max(argMap.getInteger("-rounds", 5), 1);
+
+		// The first builds warm up the JVM and the file system cache
+		for (int mode = 0; mode < MODES.length; mode++) {
+			build(indexInput, numOfThreads, mode);
+		}
+
+		long[] times = new long[MODES.length];
+		int words = 0;
+		for (int i = 0; i < rounds; i++) {
+			for (int mode = 0; mode < MODES.length; mode++) {
+				long start = System.nanoTime();
+				int modeWords = build(indexInput, numOfThreads, mode);
+				times[mode] += System.nanoTime() - start;
+
+				if (mode == 0) {
+					words = modeWords;
+				} else if (modeWords != words) {
+					System.out.printf("%s built %d words instead of %d%n", MODES[mode], modeWords, words);
+				}
+			}
+		}
+
+		System.out.printf("Words: %d, threads: %d, rounds: %d%n", words, numOfThreads, rounds);
+		for (int mode = 0; mode < MODES.length; mode++) {
+			System.out.printf("%-28s %.3f seconds per build%n", MODES[mode] + ":", times[mode] / rounds * 0.000000001);
+		}
+	}
+
+	/**
+	 * Builds an inverted index from the path.
+	 *
+	 * @param indexInput
+	 *            file or directory to build the inverted index from
+	 * @param numOfThreads
+	 *            number of worker threads to use
+	 * @param mode
+	 *            index of the way to build the index in {@link #MODES}
+	 * @return number of words in the inverted index
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static int build(Path indexInput, int numOfThreads, int mode) throws IOException, InterruptedException {
+		InvertedIndex index = new InvertedIndex();
+		if (mode >= 2) {
+			DirectoryIndexer.buildIndex(indexInput, index, numOfThreads, mode == 3);
+			return index.size();
+		}
+
+		WorkQueue queue = new WorkQueue(numOfThreads);
+		if (mode == 1) {
+			InvertedIndex.threadsBuildLocalIndex(indexInput, index, queue);
+		} else {
+			InvertedIndex.threadsBuildIndex(indexInput, index, queue);
+		}
+		queue.finish();
+		queue.shutdown();
+		return index.size();
+	}
+}
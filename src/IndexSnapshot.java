@@ -0,0 +1,506 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+
+/**
+ * Compact binary snapshot of an inverted index that is memory-mapped when it
+ * is opened. Only the document table is read right away. Words are decoded
+ * the first time a lookup needs them, and postings are decoded the first time
+ * they are searched, so a large index can be searched right after it is
+ * opened.
+ *
+ * <p>
+ * A snapshot file contains a header, the document records, a table with the
+ * offset of each document record, the word records in sorted order, and a
+ * table with the offset of each word record. Each word record holds the word
+ * followed by its postings, with document IDs and positions stored as
+ * variable-length deltas. No record crosses a 1 GB boundary of the file, so
+ * each record can be read from a single mapped buffer.
+ * </p>
+ *
+ * @author Anthony Panisales
+ */
+public class IndexSnapshot {
+
+	/** Identifies a snapshot file. */
+	private static final int MAGIC = 0x4E474958;
+
+	/** Version of the snapshot file format. */
+	private static final int VERSION = 1;
+
+	/** Size of the snapshot file header in bytes. */
+	private static final int HEADER_SIZE = 32;
+
+	/** Size of each memory-mapped buffer in bytes. */
+	private static final long CHUNK_SIZE = 1L << 30;
+
+	private final MappedByteBuffer[] chunks;
+	private final int documentCount;
+	private final int wordCount;
+	private final long documentTableStart;
+	private final long wordTableStart;
+
+	/** Words that have been decoded so far, indexed by their sorted order. */
+	private final String[] words;
+
+	/**
+	 * Maps a snapshot file into memory. Use {@link #open(Path)} instead.
+	 *
+	 * @param path
+	 *            path of the snapshot file
+	 * @throws IOException
+	 */
+	private IndexSnapshot(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+			for (int i = 0; i < chunks.length; i++) {
+				long start = i * CHUNK_SIZE;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+			}
+		}
+
+		if (chunks.length == 0 || chunks[0].limit() < HEADER_SIZE || chunks[0].getInt(0) != MAGIC) {
+			throw new IOException("Not an index snapshot: " + path);
+		}
+		if (chunks[0].getInt(4) != VERSION) {
+			throw new IOException("Unsupported index snapshot version: " + chunks[0].getInt(4));
+		}
+
+		documentCount = chunks[0].getInt(8);
+		wordCount = chunks[0].getInt(12);
+		documentTableStart = chunks[0].getLong(16);
+		wordTableStart = chunks[0].getLong(24);
+		words = new String[wordCount];
+	}
+
+	/**
+	 * Opens a snapshot file written by {@link #write(NavigableMap, DocumentTable, Path)}.
+	 *
+	 * @param path
+	 *            path of the snapshot file
+	 * @return snapshot that decodes words and postings as they are needed
+	 * @throws IOException
+	 *             if the file cannot be read or is not a snapshot
+	 */
+	public static IndexSnapshot open(Path path) throws IOException {
+		return new IndexSnapshot(path);
+	}
+
+	/**
+	 * Returns the number of words in the snapshot.
+	 *
+	 * @return number of words
+	 */
+	public int size() {
+		return wordCount;
+	}
+
+	/**
+	 * Adds every document of the snapshot to a document table, in order of
+	 * their IDs.
+	 *
+	 * @param documents
+	 *            empty document table to fill
+	 */
+	public void readDocuments(DocumentTable documents) {
+		for (int id = 0; id < documentCount; id++) {
+			long offset = chunk(documentTableStart + id * 8L).getLong(index(documentTableStart + id * 8L));
+			MappedByteBuffer chunk = chunk(offset);
+			int index = index(offset);
+			int length = chunk.getInt(index);
+			documents.add(readString(chunk, index + 4), length);
+		}
+	}
+
+	/**
+	 * Returns the word stored at the specified sorted position, decoding it
+	 * the first time it is needed.
+	 *
+	 * @param i
+	 *            sorted position of the word
+	 * @return word at the position
+	 */
+	public String getWord(int i) {
+		String word = words[i];
+		if (word == null) {
+			long offset = wordOffset(i);
+			word = readString(chunk(offset), index(offset));
+			words[i] = word;
+		}
+		return word;
+	}
+
+	/**
+	 * Searches for a word using binary search over the sorted words.
+	 *
+	 * @param word
+	 *            word to look for
+	 * @return sorted position of the word if found, otherwise
+	 *         (-(insertion point) - 1)
+	 *
+	 * @see java.util.Arrays#binarySearch(Object[], Object)
+	 */
+	public int find(String word) {
+		int low = 0;
+		int high = wordCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compare = getWord(middle).compareTo(word);
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Decodes the postings of the word stored at the specified sorted
+	 * position.
+	 *
+	 * @param i
+	 *            sorted position of the word
+	 * @return postings of the word
+	 */
+	public Postings readPostings(int i) {
+		long offset = wordOffset(i);
+		MappedByteBuffer chunk = chunk(offset);
+		int[] index = { index(offset) };
+		index[0] += 4 + chunk.getInt(index[0]);
+
+		int documents = chunk.getInt(index[0]);
+		index[0] += 4;
+
+		Postings postings = new Postings();
+		int document = 0;
+		for (int d = 0; d < documents; d++) {
+			document += readVarInt(chunk, index);
+			int count = readVarInt(chunk, index);
+			PositionList positions = new PositionList(count);
+			int position = 0;
+			for (int p = 0; p < count; p++) {
+				position += readVarInt(chunk, index);
+				positions.add(position);
+			}
+			postings.put(document, positions);
+		}
+		return postings;
+	}
+
+	/**
+	 * Writes a snapshot of an inverted index to a file. The snapshot is
+	 * written to a temporary file next to it, which then atomically replaces
+	 * the file, so a server that has the old snapshot mapped keeps reading it
+	 * whole, and a failed write leaves the old snapshot as it was.
+	 *
+	 * @param dictionary
+	 *            words of the index and their postings in sorted order
+	 * @param documents
+	 *            document table of the index
+	 * @param path
+	 *            path to write the snapshot to
+	 * @throws IOException
+	 */
+	public static void write(NavigableMap<String, Postings> dictionary, DocumentTable documents, Path path) throws IOException {
+		Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			writeFile(dictionary, documents, temp);
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of an inverted index to a file that no one has mapped.
+	 */
+	private static void writeFile(NavigableMap<String, Postings> dictionary, DocumentTable documents, Path temp)
+			throws IOException {
+		int documentCount = documents.size();
+		int wordCount = dictionary.size();
+		long[] documentOffsets = new long[documentCount];
+		long[] wordOffsets = new long[wordCount];
+		long documentTableStart;
+		long wordTableStart;
+
+		try (CountingOutputStream counter = new CountingOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16));
+				DataOutputStream out = new DataOutputStream(counter);) {
+			out.write(new byte[HEADER_SIZE]);
+
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			DataOutputStream recordOut = new DataOutputStream(record);
+
+			for (int id = 0; id < documentCount; id++) {
+				record.reset();
+				recordOut.writeInt(documents.getLength(id));
+				writeString(recordOut, documents.getPath(id));
+				documentOffsets[id] = writeRecord(counter, record);
+			}
+
+			documentTableStart = align(counter);
+			for (long offset : documentOffsets) {
+				out.writeLong(offset);
+			}
+
+			int i = 0;
+			for (Entry<String, Postings> entry : dictionary.entrySet()) {
+				if (i == wordCount) {
+					break;
+				}
+				record.reset();
+				writeString(recordOut, entry.getKey());
+				writePostings(recordOut, entry.getValue());
+				wordOffsets[i++] = writeRecord(counter, record);
+			}
+			wordCount = i;
+
+			wordTableStart = align(counter);
+			for (i = 0; i < wordCount; i++) {
+				out.writeLong(wordOffsets[i]);
+			}
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+			file.writeInt(MAGIC);
+			file.writeInt(VERSION);
+			file.writeInt(documentCount);
+			file.writeInt(wordCount);
+			file.writeLong(documentTableStart);
+			file.writeLong(wordTableStart);
+		}
+	}
+
+	/**
+	 * Writes the postings of a word as variable-length deltas.
+	 *
+	 * @param out
+	 *            output to write to
+	 * @param postings
+	 *            postings to write
+	 * @throws IOException
+	 */
+	private static void writePostings(DataOutputStream out, Postings postings) throws IOException {
+		synchronized (postings) {
+			out.writeInt(postings.size());
+			int document = 0;
+			for (int d = 0; d < postings.size(); d++) {
+				writeVarInt(out, postings.getDocument(d) - document);
+				document = postings.getDocument(d);
+
+				PositionList positions = postings.getPositions(d);
+				writeVarInt(out, positions.size());
+				int position = 0;
+				for (int p = 0; p < positions.size(); p++) {
+					writeVarInt(out, positions.get(p) - position);
+					position = positions.get(p);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a record, first padding the file to the next 1 GB boundary if
+	 * the record would otherwise cross it.
+	 *
+	 * @param counter
+	 *            output that counts the bytes written
+	 * @param record
+	 *            record to write
+	 * @return offset of the record within the file
+	 * @throws IOException
+	 *             if the record is larger than 1 GB
+	 */
+	private static long writeRecord(CountingOutputStream counter, ByteArrayOutputStream record) throws IOException {
+		if (record.size() > CHUNK_SIZE) {
+			throw new IOException("Index snapshot record is too large: " + record.size() + " bytes");
+		}
+		long offset = counter.getCount();
+		if (offset / CHUNK_SIZE != (offset + record.size() - 1) / CHUNK_SIZE) {
+			long padding = CHUNK_SIZE - offset % CHUNK_SIZE;
+			for (long i = 0; i < padding; i++) {
+				counter.write(0);
+			}
+			offset += padding;
+		}
+		record.writeTo(counter);
+		return offset;
+	}
+
+	/**
+	 * Pads the file so the next offset is a multiple of 8, so offset tables
+	 * never cross a 1 GB boundary.
+	 *
+	 * @param counter
+	 *            output that counts the bytes written
+	 * @return padded offset
+	 * @throws IOException
+	 */
+	private static long align(CountingOutputStream counter) throws IOException {
+		while (counter.getCount() % 8 != 0) {
+			counter.write(0);
+		}
+		return counter.getCount();
+	}
+
+	/**
+	 * Writes a string as its length in bytes followed by its UTF-8 bytes.
+	 *
+	 * @param out
+	 *            output to write to
+	 * @param text
+	 *            string to write
+	 * @throws IOException
+	 */
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+	 *
+	 * @param chunk
+	 *            mapped buffer to read from
+	 * @param index
+	 *            index of the string within the buffer
+	 * @return string read
+	 */
+	private static String readString(MappedByteBuffer chunk, int index) {
+		byte[] bytes = new byte[chunk.getInt(index)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = chunk.get(index + 4 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a non-negative int using 7 bits per byte.
+	 *
+	 * @param out
+	 *            output to write to
+	 * @param value
+	 *            value to write
+	 * @throws IOException
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads an int written by {@link #writeVarInt(DataOutputStream, int)}.
+	 *
+	 * @param chunk
+	 *            mapped buffer to read from
+	 * @param index
+	 *            single element array holding the index to read at, which is
+	 *            moved past the value read
+	 * @return value read
+	 */
+	private static int readVarInt(MappedByteBuffer chunk, int[] index) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = chunk.get(index[0]++);
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	/**
+	 * Returns the offset of the word record at the specified sorted position.
+	 *
+	 * @param i
+	 *            sorted position of the word
+	 * @return offset of the word record within the file
+	 */
+	private long wordOffset(int i) {
+		long offset = wordTableStart + i * 8L;
+		return chunk(offset).getLong(index(offset));
+	}
+
+	/**
+	 * Returns the mapped buffer that holds the specified file offset.
+	 *
+	 * @param offset
+	 *            offset within the file
+	 * @return mapped buffer holding the offset
+	 */
+	private MappedByteBuffer chunk(long offset) {
+		return chunks[(int) (offset / CHUNK_SIZE)];
+	}
+
+	/**
+	 * Returns the index of a file offset within its mapped buffer.
+	 *
+	 * @param offset
+	 *            offset within the file
+	 * @return index within the mapped buffer
+	 */
+	private static int index(long offset) {
+		return (int) (offset % CHUNK_SIZE);
+	}
+
+	/**
+	 * Output stream that counts the number of bytes written through it.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private final OutputStream out;
+		private long count;
+
+		public CountingOutputStream(OutputStream out) {
+			this.out = out;
+			this.count = 0;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
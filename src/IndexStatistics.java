@@ -0,0 +1,63 @@
+/**
+ * Holds the collection statistics a {@link Scorer} needs to rank search
+ * results: the number of documents, their total length, and the number of
+ * documents each word appears in. The document counts are taken once when
+ * the statistics are created, so a whole search uses the same values.
+ *
+ * @author Anthony Panisales
+ */
+public abstract class IndexStatistics {
+
+	private final int documentCount;
+	private final long totalLength;
+
+	/**
+	 * Initializes the statistics.
+	 *
+	 * @param documentCount
+	 *            number of documents in the index
+	 * @param totalLength
+	 *            total number of words in every document of the index
+	 */
+	public IndexStatistics(int documentCount, long totalLength) {
+		this.documentCount = documentCount;
+		this.totalLength = totalLength;
+	}
+
+	/**
+	 * Returns the number of documents in the index.
+	 *
+	 * @return number of documents
+	 */
+	public int getDocumentCount() {
+		return documentCount;
+	}
+
+	/**
+	 * Returns the total number of words in every document of the index.
+	 *
+	 * @return total number of words
+	 */
+	public long getTotalLength() {
+		return totalLength;
+	}
+
+	/**
+	 * Returns the average number of words in a document.
+	 *
+	 * @return average number of words in a document, or 0 if there are no
+	 *         documents
+	 */
+	public double getAverageLength() {
+		return documentCount == 0 ? 0 : (double) totalLength / documentCount;
+	}
+
+	/**
+	 * Returns the number of documents a word appears in.
+	 *
+	 * @param word
+	 *            word to look up
+	 * @return number of documents with the word
+	 */
+	public abstract int getDocumentFrequency(String word);
+}
@@ -2,18 +2,32 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.NavigableMap;
 import java.util.TreeMap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.io.BufferedWriter;
+import java.io.CharArrayWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Data structure that stores the mapping from words to the
@@ -28,32 +42,63 @@ public class InvertedIndex {
 	/**
 	 * Writes the contents of an inverted index in alphabetically sorted order
 	 * as a nested JSON object using a "pretty" format with tab characters for 
-	 * indentation to a file.
+	 * indentation to a file. Streams the words straight from the sorted
+	 * dictionary without copying the index, and writes characters directly
+	 * instead of building intermediate strings.
 	 */
 	private class IndexJSONWriter {
 
+		/** Tab characters for each indent level used by the writer. */
+		private final String[] tabs = { "", "\t", "\t\t", "\t\t\t" };
+
+		/** Buffer used to write the digits of a position. */
+		private final char[] digits = new char[11];
+
+		/** Rank of the path of each document in sorted order, indexed by document ID. */
+		private final int[] ranks;
+
+		/**
+		 * Initializes the writer.
+		 *
+		 * @param ranks
+		 *            rank of the path of each document in sorted order
+		 */
+		public IndexJSONWriter(int[] ranks) {
+			this.ranks = ranks;
+		}
+
 		/**
-		 * Returns a String with the specified number of tab characters.
+		 * Writes the characters of a non-negative number without creating a
+		 * String.
 		 *
-		 * @param times
-		 *            number of tab characters to include
-		 * @return tab characters repeated the specified number of times
+		 * @param writer
+		 *            writer to use for output
+		 * @param number
+		 *            number to write
+		 * @throws IOException
 		 */
-		private String indent(int times) {
-			char[] tabs = new char[times];
-			Arrays.fill(tabs, '\t');
-			return String.valueOf(tabs);
+		private void writeNumber(Writer writer, int number) throws IOException {
+			int start = digits.length;
+			do {
+				digits[--start] = (char) ('0' + number % 10);
+				number /= 10;
+			} while (number > 0);
+			writer.write(digits, start, digits.length - start);
 		}
 
 		/**
-		 * Returns a quoted version of the provided text.
+		 * Writes a quoted version of the provided text.
 		 *
+		 * @param writer
+		 *            writer to use for output
 		 * @param text
 		 *            text to surround in quotes
-		 * @return text surrounded by quotes
+		 * @throws IOException
 		 */
-		private String quote(String text) {
-			return String.format("\"%s\"", text);
+		private void writeQuote(Writer writer, String text) throws IOException {
+			writer.write('"');
+			writer.write(text);
+			writer.write('"');
 		}
 
 		/**
@@ -67,86 +112,209 @@ public class InvertedIndex {
 		 *            number of times to indent the array itself
 		 * @throws IOException
 		 */
-		private void asArray(Writer writer, List<Integer> positions, int level) throws IOException {
+		private void asArray(Writer writer, PositionList positions, int level) throws IOException {
 			writer.write("[\n");
-			int index = 0;
-			for (int position : positions) {
-				if (index != positions.size()-1) {
-					writer.write(indent(level+1) + position + ",\n");
-				} else {
-					writer.write(indent(level+1) + position + "\n");
-				}
-				index++;
+			for (int index = 0; index < positions.size(); index++) {
+				writer.write(tabs[level+1]);
+				writeNumber(writer, positions.get(index));
+				writer.write(index != positions.size()-1 ? ",\n" : "\n");
 			}
-			writer.write(indent(level) + "]");
+			writer.write(tabs[level]);
+			writer.write(']');
 		}
 
 		/**
 		 * Writes the inverted index as a JSON object to the path using UTF8.
 		 *
-		 * @param invertedIndex
-		 *            inverted index data structure to write as a JSON object
 		 * @param path
 		 *            path to write the file to
 		 * @throws IOException
-		 * @throws InterruptedException 
 		 */
-		public void asObject(InvertedIndex invertedIndex, Path path) throws IOException, InterruptedException {
+		public void asObject(Path path) throws IOException {
 			try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
 				writer.write("{\n");
-				int index = 0;
-				for (Entry<String, HashMap<String, List<Integer>>> e : invertedIndex.toTreeMap().entrySet()) {
-					writer.write(indent(1) + quote(e.getKey()) + ": {\n");
-					asNestedObject(writer, new TreeMap<String, List<Integer>>(e.getValue()), path);
-					if (index != invertedIndex.size()-1) {
-						writer.write(indent(1) + "},\n");
-					} else {
-						writer.write(indent(1) + "}\n");
+				asWords(writer, dictionary, true);
+				writer.write("}");
+				writer.flush();
+			}
+		}
+
+		/**
+		 * Writes the inverted index as a JSON object to the path using UTF8.
+		 * The words are split into sorted ranges that are written to separate
+		 * buffers by the worker threads, and the buffers are written to the
+		 * file in order as soon as each one is ready. If any range fails, the
+		 * partly written file is deleted and the first failure is thrown.
+		 *
+		 * @param path
+		 *            path to write the file to
+		 * @param queue
+		 *            work queue with multiple worker threads
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		public void asObject(Path path, WorkQueue queue) throws IOException, InterruptedException {
+			List<String> bounds = splitWords(Collections.singletonList(InvertedIndex.this), queue.size() * 4);
+			final CharArrayWriter[] buffers = new CharArrayWriter[bounds.size() + 1];
+			final CountDownLatch[] ready = new CountDownLatch[buffers.length];
+			final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+			for (int i = 0; i < buffers.length; i++) {
+				final NavigableMap<String, Postings> words = range(dictionary,
+						i == 0 ? null : bounds.get(i-1), i == bounds.size() ? null : bounds.get(i));
+				final boolean last = i == buffers.length - 1;
+				final int chunk = i;
+				buffers[i] = new CharArrayWriter();
+				ready[i] = new CountDownLatch(1);
+				queue.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							new IndexJSONWriter(ranks).asWords(buffers[chunk], words, last);
+						} catch (IOException | RuntimeException e) {
+							failure.compareAndSet(null, e);
+						} finally {
+							ready[chunk].countDown();
+						}
 					}
-					index++;
+				});
+			}
+
+			try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+				writer.write("{\n");
+				for (int i = 0; i < buffers.length && failure.get() == null; i++) {
+					ready[i].await();
+					buffers[i].writeTo(writer);
+					buffers[i] = null;
 				}
 				writer.write("}");
 				writer.flush();
 			}
+
+			// Never leaves a partly written index behind
+			Exception e = failure.get();
+			if (e != null) {
+				Files.deleteIfExists(path);
+				if (e instanceof IOException) {
+					throw (IOException) e;
+				}
+				throw (RuntimeException) e;
+			}
+		}
+
+		/**
+		 * Writes a range of words and their postings as members of a JSON
+		 * object.
+		 *
+		 * @param writer
+		 *            writer to use for output
+		 * @param words
+		 *            sorted range of words to write
+		 * @param last
+		 *            whether the range includes the last word of the index
+		 * @throws IOException
+		 */
+		private void asWords(Writer writer, NavigableMap<String, Postings> words, boolean last) throws IOException {
+			// Looks one entry ahead to know whether a comma follows
+			Iterator<Entry<String, Postings>> iterator = words.entrySet().iterator();
+			Entry<String, Postings> next = iterator.hasNext() ? iterator.next() : null;
+			while (next != null) {
+				Entry<String, Postings> e = next;
+				next = iterator.hasNext() ? iterator.next() : null;
+				writer.write(tabs[1]);
+				writeQuote(writer, e.getKey());
+				writer.write(": {\n");
+				asNestedObject(writer, e.getValue());
+				writer.write(tabs[1]);
+				writer.write(next != null || !last ? "},\n" : "}\n");
+			}
 		}
 		
 		/**
-		 * Writes the map of elements as a JSON object with a nested array to the
-		 * path using UTF8.
+		 * Writes the postings of a word as JSON object members with a nested
+		 * array, sorted by path.
 		 *
 		 * @param writer
 		 *            writer to use for output
-		 * @param elements
-		 *            elements to write as a JSON object with a nested array
-		 * @param path
-		 *            path to write file
+		 * @param postings
+		 *            postings to write
 		 * @throws IOException
 		 */
-		public void asNestedObject(Writer writer, TreeMap<String, List<Integer>> elements, Path path) throws IOException {
-			int filenameIndex = 0;
-			for (String filename : elements.keySet()) {
-				writer.write(indent(2) + quote(filename) + ": ");
-				asArray(writer, elements.get(filename), 2);
-				if (filenameIndex != elements.size()-1) {
-					writer.write(",\n");
-				} else {
-					writer.write("\n");
-				}
-				filenameIndex++;
+		private void asNestedObject(Writer writer, Postings postings) throws IOException {
+			// Sorts the postings by the rank of their paths, kept in the high bits
+			long[] order = new long[postings.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = ((long) ranks[postings.getDocument(i)] << 32) | i;
+			}
+			Arrays.sort(order);
+
+			for (int i = 0; i < order.length; i++) {
+				int index = (int) order[i];
+				writer.write(tabs[2]);
+				writeQuote(writer, documents.getPath(postings.getDocument(index)));
+				writer.write(": ");
+				asArray(writer, postings.getPositions(index), 2);
+				writer.write(i != order.length-1 ? ",\n" : "\n");
 			}
-			writer.flush();
 		}
 	}
 	
-	private HashMap<String,HashMap<String,List<Integer>>> invertedIndex;
+	/**
+	 * Documents are added while holding the shared side of the lock, so many
+	 * threads can add documents at once. Each word's postings are guarded by
+	 * their own monitor instead. Merging another index holds the exclusive
+	 * side of the lock.
+	 */
+	private ConcurrentHashMap<String,Postings> invertedIndex;
+	private ConcurrentSkipListMap<String,Postings> dictionary;
+	private final DocumentTable documents;
 	private final ReadWriteLock lock;
 	
+	/**
+	 * Words and postings that have not been needed yet are left in the
+	 * snapshot the index was opened from, if any. Words are only added to
+	 * the maps above once they are decoded from the snapshot.
+	 */
+	private final IndexSnapshot snapshot;
+	private final AtomicInteger addedWords;
+	private volatile boolean loaded;
+	
+	/** Counts the changes to the index, so cached search results can be invalidated. */
+	private final AtomicLong version;
+	
+	/** Ranks search results using the document table and the postings. */
+	private volatile Scorer scorer;
+	
 	/**
 	 * Initializes the inverted index.
 	 */
 	public InvertedIndex() {
-		invertedIndex = new HashMap<String,HashMap<String,List<Integer>>>();
+		this(null);
+	}
+	
+	/**
+	 * Initializes the inverted index from a snapshot. The documents of the
+	 * snapshot are read right away, but words and postings are only decoded
+	 * the first time they are needed.
+	 * 
+	 * @param snapshot
+	 *              snapshot to open the index from, or null for an empty index
+	 * 
+	 * @see IndexSnapshot#open(Path)
+	 */
+	public InvertedIndex(IndexSnapshot snapshot) {
+		invertedIndex = new ConcurrentHashMap<String,Postings>();
+		dictionary = new ConcurrentSkipListMap<String,Postings>();
+		documents = new DocumentTable();
 		lock = new ReadWriteLock();
+		this.snapshot = snapshot;
+		addedWords = new AtomicInteger();
+		version = new AtomicLong();
+		loaded = snapshot == null;
+		scorer = Scorer.BM25;
+		if (snapshot != null) {
+			snapshot.readDocuments(documents);
+		}
 	}
 	
 	/**
@@ -156,25 +324,174 @@ public class InvertedIndex {
 	 *              index to merge with
 	 */
 	public void addIndextoIndex(InvertedIndex indexToAdd) throws InterruptedException {
+		indexToAdd.loadAll();
 		lock.lockReadWrite();
-		for (Entry<String, HashMap<String, List<Integer>>> indexToAddEntry : indexToAdd.toTreeMap().entrySet()) {
-			
-			// If invertedIndex has already has the word
-			if (invertedIndex.containsKey(indexToAddEntry.getKey())) {
-				HashMap<String, List<Integer>> invertedIndexInnerMap = invertedIndex.get(indexToAddEntry.getKey());
-				HashMap<String, List<Integer>> indexToAddEntryInnerMap = indexToAddEntry.getValue();
-				for (String path : indexToAddEntryInnerMap.keySet()) {
-					invertedIndexInnerMap.put(path, indexToAddEntryInnerMap.get(path));
-				}
-				invertedIndex.put(indexToAddEntry.getKey(), invertedIndexInnerMap);
-			} else {
-				invertedIndex.put(indexToAddEntry.getKey(), indexToAddEntry.getValue());
+		int[] ids = addDocuments(indexToAdd);
+		mergeWords(indexToAdd.dictionary, ids);
+		version.incrementAndGet();
+		lock.unlockReadWrite();
+	}
+	
+	/**
+	 * Merges several inverted indexes with this index in parallel. The words
+	 * are split into sorted ranges, and each range is merged by a separate
+	 * worker thread, so no two threads ever update the same postings. The
+	 * postings of the merged indexes are not copied, so those indexes should
+	 * no longer be used afterwards. Must not be called from a worker thread
+	 * of the work queue.
+	 * 
+	 * @param indexesToAdd
+	 *              indexes to merge with
+	 * @param queue
+	 *              work queue with multiple worker threads
+	 * @throws InterruptedException
+	 */
+	public void addIndexestoIndex(List<InvertedIndex> indexesToAdd, WorkQueue queue) throws InterruptedException {
+		for (InvertedIndex indexToAdd : indexesToAdd) {
+			indexToAdd.loadAll();
+		}
+		lock.lockReadWrite();
+		List<int[]> ids = new ArrayList<int[]>();
+		for (InvertedIndex indexToAdd : indexesToAdd) {
+			ids.add(addDocuments(indexToAdd));
+		}
+		
+		List<String> bounds = splitWords(indexesToAdd, queue.size());
+		for (int i = 0; i <= bounds.size(); i++) {
+			String from = i == 0 ? null : bounds.get(i-1);
+			String to = i == bounds.size() ? null : bounds.get(i);
+			queue.execute(new MergeTask(from, to, indexesToAdd, ids));
+		}
+		queue.finish();
+		version.incrementAndGet();
+		lock.unlockReadWrite();
+	}
+	
+	/**
+	 * Merges several inverted indexes, ordered from newest to oldest, with
+	 * this index. If a document is in more than one of the indexes, only the
+	 * newest version of the document is kept. Documents that are already in
+	 * this index are not replaced.
+	 * 
+	 * @param indexesToAdd
+	 *              indexes to merge with, newest first
+	 * @throws InterruptedException
+	 * 
+	 * @see SegmentedIndex
+	 */
+	public void addNewestIndexestoIndex(List<InvertedIndex> indexesToAdd) throws InterruptedException {
+		for (InvertedIndex indexToAdd : indexesToAdd) {
+			indexToAdd.loadAll();
+		}
+		lock.lockReadWrite();
+		for (InvertedIndex indexToAdd : indexesToAdd) {
+			DocumentTable documentsToAdd = indexToAdd.documents;
+			int[] ids = new int[documentsToAdd.size()];
+			for (int id = 0; id < ids.length; id++) {
+				String path = documentsToAdd.getPath(id);
+				ids[id] = documents.getId(path) >= 0 ? -1 : documents.add(path, documentsToAdd.getLength(id));
 			}
-			
+			mergeWords(indexToAdd.dictionary, ids);
 		}
+		version.incrementAndGet();
 		lock.unlockReadWrite();
 	}
 	
+	/**
+	 * Adds the documents of another inverted index to the document table of
+	 * this index.
+	 * 
+	 * @param indexToAdd
+	 *              index whose documents to add
+	 * @return array that maps the document IDs of the other index to document
+	 *         IDs of this index
+	 */
+	private int[] addDocuments(InvertedIndex indexToAdd) {
+		DocumentTable documentsToAdd = indexToAdd.documents;
+		int[] ids = new int[documentsToAdd.size()];
+		for (int id = 0; id < ids.length; id++) {
+			ids[id] = documents.add(documentsToAdd.getPath(id), documentsToAdd.getLength(id));
+		}
+		return ids;
+	}
+	
+	/**
+	 * Merges the postings of the given words into this index.
+	 * 
+	 * @param words
+	 *              words and postings to merge with
+	 * @param ids
+	 *              array that maps the document IDs of the postings to
+	 *              document IDs of this index, or to -1 to skip a document
+	 */
+	private void mergeWords(NavigableMap<String, Postings> words, int[] ids) {
+		for (Entry<String, Postings> indexToAddEntry : words.entrySet()) {
+			Postings postings = null;
+			Postings postingsToAdd = indexToAddEntry.getValue();
+			for (int i = 0; i < postingsToAdd.size(); i++) {
+				int id = ids[postingsToAdd.getDocument(i)];
+				if (id < 0) {
+					continue;
+				}
+				if (postings == null) {
+					postings = getOrAddWord(indexToAddEntry.getKey());
+				}
+				postings.put(id, postingsToAdd.getPositions(i));
+			}
+		}
+	}
+	
+	/**
+	 * Picks words that split the words of the largest index into roughly
+	 * equal sorted ranges.
+	 * 
+	 * @param indexes
+	 *              indexes whose words will be split
+	 * @param parts
+	 *              number of ranges to split the words into
+	 * @return sorted list of words where each range after the first begins
+	 */
+	private static List<String> splitWords(List<InvertedIndex> indexes, int parts) {
+		List<String> bounds = new ArrayList<String>();
+		InvertedIndex largest = null;
+		for (InvertedIndex index : indexes) {
+			if (largest == null || index.size() > largest.size()) {
+				largest = index;
+			}
+		}
+		if (largest == null || parts <= 1) {
+			return bounds;
+		}
+		
+		int step = Math.max(largest.size() / parts, 1);
+		int count = 0;
+		for (String word : largest.dictionary.keySet()) {
+			if (count > 0 && count % step == 0 && bounds.size() < parts - 1) {
+				bounds.add(word);
+			}
+			count++;
+		}
+		return bounds;
+	}
+	
+	/**
+	 * Returns the words of a sorted dictionary within a range.
+	 * 
+	 * @param dictionary
+	 *              sorted dictionary of words
+	 * @param from
+	 *              first word of the range, or null to start at the first word
+	 * @param to
+	 *              word after the range, or null to end at the last word
+	 * @return view of the words within the range
+	 */
+	private static NavigableMap<String, Postings> range(NavigableMap<String, Postings> dictionary, String from, String to) {
+		if (from == null) {
+			return to == null ? dictionary : dictionary.headMap(to, false);
+		}
+		return to == null ? dictionary.tailMap(from, true) : dictionary.subMap(from, true, to, false);
+	}
+	
 	/**
 	 * Adds an entry into the inverted index for every word in the given
 	 * list of words.
@@ -187,14 +504,94 @@ public class InvertedIndex {
 	 *              list of words to be put into the inverted index
 	 */
 	public void addAll(String pathString, WordIndex wi, List<String> words) {
-		lock.lockReadWrite();
+		lock.lockReadOnly();
+		int id = documents.add(pathString, wi.positions());
 		for (String word : words) {
-			if (!invertedIndex.containsKey(word)) {
-				invertedIndex.put(word, new HashMap<String,List<Integer>>());
+			PositionList positions = wi.copyPositions(word);
+			Postings postings = getOrAddWord(word);
+			synchronized (postings) {
+				postings.put(id, positions);
 			}
-			invertedIndex.get(word).put(pathString, wi.copyPositions(word));
 		}
-		lock.unlockReadWrite();
+		version.incrementAndGet();
+		lock.unlockReadOnly();
+	}
+	
+	/**
+	 * Returns the postings of a word, first adding empty postings to both the
+	 * hash map used for exact lookups and the sorted dictionary used for
+	 * prefix lookups if the word is new. Safe to call from multiple threads.
+	 * 
+	 * @param word
+	 *              word to look up or add
+	 * @return postings of the word
+	 */
+	private Postings getOrAddWord(String word) {
+		Postings postings = getPostings(word);
+		if (postings == null) {
+			postings = new Postings();
+			Postings existing = invertedIndex.putIfAbsent(word, postings);
+			if (existing != null) {
+				return existing;
+			}
+			dictionary.put(word, postings);
+			addedWords.incrementAndGet();
+		}
+		return postings;
+	}
+	
+	/**
+	 * Returns the postings of a word, decoding them from the snapshot the
+	 * first time they are needed.
+	 * 
+	 * @param word
+	 *              word to look up
+	 * @return postings of the word, or null if the word is not in the index
+	 */
+	private Postings getPostings(String word) {
+		Postings postings = invertedIndex.get(word);
+		if (postings == null && !loaded) {
+			int i = snapshot.find(word);
+			if (i >= 0) {
+				postings = loadWord(i);
+			}
+		}
+		return postings;
+	}
+	
+	/**
+	 * Decodes a word and its postings from the snapshot and adds them to the
+	 * index, unless another thread already did so.
+	 * 
+	 * @param i
+	 *              sorted position of the word within the snapshot
+	 * @return postings of the word
+	 */
+	private Postings loadWord(int i) {
+		String word = snapshot.getWord(i);
+		Postings postings = invertedIndex.get(word);
+		if (postings == null) {
+			postings = snapshot.readPostings(i);
+			Postings existing = invertedIndex.putIfAbsent(word, postings);
+			if (existing != null) {
+				return existing;
+			}
+			dictionary.put(word, postings);
+		}
+		return postings;
+	}
+	
+	/**
+	 * Decodes every word and its postings that are still only in the
+	 * snapshot, for operations that need to go through all of the words.
+	 */
+	private void loadAll() {
+		if (!loaded) {
+			for (int i = 0; i < snapshot.size(); i++) {
+				loadWord(i);
+			}
+			loaded = true;
+		}
 	}
 	
 	/**
@@ -209,14 +606,25 @@ public class InvertedIndex {
 	 * @throws InterruptedException
 	 */
 	public void checkAndParseFile(Path filepath) throws IOException, InterruptedException {
-		String fileString = filepath.toString();
-		
-		if (Files.isReadable(filepath) && (fileString.endsWith(".html") || fileString.endsWith(".htm")) || fileString.endsWith(".HTML")) {
+		if (isHTMLFile(filepath) && Files.isReadable(filepath)) {
 			WordIndex wi = WordIndexBuilder.buildIndex(filepath);
-			addAll(fileString, wi, wi.copyWords());
+			addAll(filepath.toString(), wi, wi.copyWords());
 		}
 	}
 	
+	/**
+	 * Checks if a path has the extension of an HTML file. Only looks at the
+	 * name of the path, so it does not access the file system.
+	 * 
+	 * @param filepath
+	 *               path to the file to check
+	 * @return true if the path ends with .html, .htm, or .HTML
+	 */
+	public static boolean isHTMLFile(Path filepath) {
+		String fileString = filepath.toString();
+		return fileString.endsWith(".html") || fileString.endsWith(".htm") || fileString.endsWith(".HTML");
+	}
+	
 	/**
 	 * Recursively passes through a directory and its contents. If one
 	 * entry in the directory is another directory, then checkDirectory
@@ -242,67 +650,492 @@ public class InvertedIndex {
 	}
 	
 	/**
-	 * Makes sure that filenames only correspond to one search result per 
+	 * Sets the scorer used to rank search results. BM25 is used unless
+	 * another scorer is set.
+	 * 
+	 * @param scorer
+	 *              scorer used to rank search results
+	 * 
+	 * @see Scorer#BM25
+	 */
+	public void setScorer(Scorer scorer) {
+		this.scorer = scorer;
+		version.incrementAndGet();
+	}
+	
+	/**
+	 * Returns the version of the inverted index, which changes every time
+	 * documents are added to the index or the scorer is changed.
+	 * 
+	 * @return version of the inverted index
+	 * 
+	 * @see QueryCache
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+	
+	/**
+	 * Returns the scorer used to rank search results.
+	 * 
+	 * @return scorer used to rank search results
+	 */
+	public Scorer getScorer() {
+		return scorer;
+	}
+	
+	/**
+	 * Returns the collection statistics of the inverted index, which are used
+	 * to rank search results. Document frequencies are looked up live.
+	 * 
+	 * @return statistics of the inverted index
+	 */
+	public IndexStatistics getStatistics() {
+		return new IndexStatistics(documents.size(), documents.getTotalLength()) {
+			@Override
+			public int getDocumentFrequency(String word) {
+				Postings postings = getPostings(word);
+				if (postings == null) {
+					return 0;
+				}
+				synchronized (postings) {
+					return postings.size();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Makes sure that documents only correspond to one search result per 
 	 * query and updates those search results as needed.
 	 * 
-	 * @param usedFilenames
-	 *           map containing mappings of a filename and its search result
+	 * @param usedDocuments
+	 *           map containing mappings of a document ID and its search result
 	 * @param word
 	 *           a word in the inverted index that is valid for the query and
 	 *           the type of search being performed
+	 * @param scorer
+	 *           scorer used to add the score of the word to each search result
+	 * @param statistics
+	 *           collection statistics used by the scorer
 	 */
-	private void search(HashMap<String,QueryHelper.SearchResult> usedFilenames, String word) {
-		HashMap<String,List<Integer>> invIdxInnerMap = invertedIndex.get(word);
-		for (String filename : invIdxInnerMap.keySet()) {
-			QueryHelper.SearchResult sr;
-			if (!usedFilenames.containsKey(filename)) {
-				sr = new QueryHelper().new SearchResult(filename);
+	private void search(HashMap<Integer,QueryHelper.SearchResult> usedDocuments, String word,
+			Scorer scorer, IndexStatistics statistics) {
+		Postings postings = getPostings(word);
+		int numOfDocuments = statistics.getDocumentCount();
+		double averageLength = statistics.getAverageLength();
+		int documentFrequency = statistics.getDocumentFrequency(word);
+		synchronized (postings) {
+			for (int i = 0; i < postings.size(); i++) {
+				int document = postings.getDocument(i);
+				QueryHelper.SearchResult sr = usedDocuments.get(document);
+				if (sr == null) {
+					sr = new QueryHelper.SearchResult(document, documents);
+					usedDocuments.put(document, sr);
+				}
+				PositionList listOfPos = postings.getPositions(i);
+				sr.setCount(sr.getCount() + listOfPos.size());
+				sr.setScore(sr.getScore() + scorer.score(listOfPos.size(), documentFrequency,
+						documents.getLength(document), numOfDocuments, averageLength));
+				if (listOfPos.first() < sr.getFirstPos()) {
+					sr.setFirstPos(listOfPos.first());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that documents only correspond to one search result per
+	 * query and updates the search results of the documents a phrase or
+	 * proximity clause matches. The documents that have every word of the
+	 * clause are found by walking the postings of the rarest word and
+	 * skipping through the postings of the others. Each match of the clause
+	 * counts as one occurrence.
+	 * 
+	 * @param usedDocuments
+	 *           map containing mappings of a document ID and its search result
+	 * @param clause
+	 *           phrase or proximity clause of the query
+	 * @param scorer
+	 *           scorer used to add the score of the clause to each search result
+	 * @param statistics
+	 *           collection statistics used by the scorer
+	 */
+	private void search(HashMap<Integer,QueryHelper.SearchResult> usedDocuments, ProximityQuery clause,
+			Scorer scorer, IndexStatistics statistics) {
+		List<int[]> matches = matches(clause);
+		int numOfDocuments = statistics.getDocumentCount();
+		double averageLength = statistics.getAverageLength();
+		for (int[] match : matches) {
+			QueryHelper.SearchResult sr = usedDocuments.get(match[0]);
+			if (sr == null) {
+				sr = new QueryHelper.SearchResult(match[0], documents);
+				usedDocuments.put(match[0], sr);
+			}
+			sr.setCount(sr.getCount() + match[1]);
+			sr.setScore(sr.getScore() + scorer.score(match[1], matches.size(),
+					documents.getLength(match[0]), numOfDocuments, averageLength));
+			if (match[2] < sr.getFirstPos()) {
+				sr.setFirstPos(match[2]);
+			}
+		}
+	}
+
+	/**
+	 * Finds the documents a phrase or proximity clause matches, by walking
+	 * the postings of the rarest word of the clause and skipping through the
+	 * postings of the others. Must be called while holding the lock.
+	 * 
+	 * @param clause
+	 *           phrase or proximity clause
+	 * @return document ID, number of matches, and first position of every
+	 *         document the clause matches, in increasing order of document ID
+	 */
+	private List<int[]> matches(ProximityQuery clause) {
+		String[] words = clause.getWords();
+		List<PostingsIterator.TermIterator> terms = new ArrayList<PostingsIterator.TermIterator>();
+		List<int[]> matches = new ArrayList<int[]>();
+		for (String word : words) {
+			Postings postings = getPostings(word);
+			if (postings == null) {
+				return matches;
+			}
+			terms.add(new PostingsIterator.TermIterator(word, postings));
+		}
+		
+		PositionList[] lists = new PositionList[words.length];
+		PostingsIterator iterator = new PostingsIterator.AndIterator(terms, Collections.<PostingsIterator>emptyList());
+		for (int document = iterator.advance(0); document != PostingsIterator.NO_MORE_DOCUMENTS;
+				document = iterator.advance(document + 1)) {
+			for (int i = 0; i < lists.length; i++) {
+				lists[i] = terms.get(i).getPositions();
+			}
+			int[] match = clause.match(lists);
+			if (match != null) {
+				matches.add(new int[] { document, match[0], match[1] });
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Makes sure that documents only correspond to one search result per
+	 * query and updates the search results of the documents a boolean query
+	 * matches. Only the documents that can match are visited: each AND is
+	 * driven by its rarest operand, and its other operands skip ahead to the
+	 * documents it proposes. Every word or clause that is not excluded by a
+	 * NOT counts once toward the search result of a matching document,
+	 * however many times it is in the query. The words of a clause always
+	 * match exactly, and each match of a clause counts as one occurrence.
+	 * 
+	 * @param usedDocuments
+	 *           map containing mappings of a document ID and its search result
+	 * @param query
+	 *           boolean query
+	 * @param exact
+	 *           whether words must match exactly, or only as prefixes
+	 * @param scorer
+	 *           scorer used to add the score of each word to each search result
+	 * @param statistics
+	 *           collection statistics used by the scorer
+	 */
+	private void search(HashMap<Integer,QueryHelper.SearchResult> usedDocuments, BooleanQuery query, boolean exact,
+			Scorer scorer, IndexStatistics statistics) {
+		List<PostingsIterator.LeafIterator> terms = new ArrayList<PostingsIterator.LeafIterator>();
+		PostingsIterator iterator = iterator(query, exact, terms);
+		if (iterator == null) {
+			return;
+		}
+		
+		// A word in several branches of the query is matched by each branch, but only counted once
+		Map<String, PostingsIterator.LeafIterator> scored = new LinkedHashMap<String, PostingsIterator.LeafIterator>();
+		for (PostingsIterator.LeafIterator term : terms) {
+			if (!scored.containsKey(term.getWord())) {
+				scored.put(term.getWord(), term);
+			}
+		}
+		terms = new ArrayList<PostingsIterator.LeafIterator>(scored.values());
+		
+		int numOfDocuments = statistics.getDocumentCount();
+		double averageLength = statistics.getAverageLength();
+		int[] frequencies = new int[terms.size()];
+		for (int i = 0; i < frequencies.length; i++) {
+			frequencies[i] = terms.get(i).getDocumentFrequency(statistics);
+		}
+		
+		for (int document = iterator.advance(0); document != PostingsIterator.NO_MORE_DOCUMENTS;
+				document = iterator.advance(document + 1)) {
+			QueryHelper.SearchResult sr = usedDocuments.get(document);
+			if (sr == null) {
+				sr = new QueryHelper.SearchResult(document, documents);
+				usedDocuments.put(document, sr);
+			}
+			for (int i = 0; i < frequencies.length; i++) {
+				if (terms.get(i).advance(document) != document) {
+					continue;
+				}
+				int count = terms.get(i).getCount();
+				sr.setCount(sr.getCount() + count);
+				sr.setScore(sr.getScore() + scorer.score(count, frequencies[i],
+						documents.getLength(document), numOfDocuments, averageLength));
+				if (terms.get(i).getFirst() < sr.getFirstPos()) {
+					sr.setFirstPos(terms.get(i).getFirst());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Builds the postings iterator that visits the documents a boolean query
+	 * matches.
+	 * 
+	 * @param query
+	 *           boolean query
+	 * @param exact
+	 *           whether words must match exactly, or only as prefixes
+	 * @param terms
+	 *           list to add the iterator of every word and clause that is not
+	 *           excluded to
+	 * @return postings iterator, or null if the query cannot match anything
+	 */
+	private PostingsIterator iterator(BooleanQuery query, boolean exact, List<PostingsIterator.LeafIterator> terms) {
+		List<PostingsIterator> iterators = new ArrayList<PostingsIterator>();
+		List<PostingsIterator.LeafIterator> queryTerms = new ArrayList<PostingsIterator.LeafIterator>();
+		switch (query.getOperator()) {
+		case CLAUSE:
+			List<int[]> matches = matches(query.getClause());
+			if (matches.isEmpty()) {
+				return null;
+			}
+			PostingsIterator.ClauseIterator clause = new PostingsIterator.ClauseIterator(query.getWord(), matches);
+			terms.add(clause);
+			return clause;
+		case WORD:
+			Collection<String> words = new ArrayList<String>();
+			if (exact) {
+				words.add(query.getWord());
 			} else {
-				sr = usedFilenames.get(filename);
+				addPrefixWords(query.getWord(), words);
 			}
-			List<Integer> listOfPos = invIdxInnerMap.get(filename);
-			sr.setCount(sr.getCount() + listOfPos.size());
-			if (listOfPos.get(0) < sr.getFirstPos()) {
-				sr.setFirstPos(listOfPos.get(0));
+			for (String word : words) {
+				Postings postings = getPostings(word);
+				if (postings != null) {
+					PostingsIterator.TermIterator term = new PostingsIterator.TermIterator(word, postings);
+					iterators.add(term);
+					queryTerms.add(term);
+				}
 			}
-			usedFilenames.put(filename, sr);
+			if (iterators.isEmpty()) {
+				return null;
+			}
+			terms.addAll(queryTerms);
+			return iterators.size() == 1 ? iterators.get(0) : new PostingsIterator.OrIterator(iterators);
+		case AND:
+			List<PostingsIterator> excluded = new ArrayList<PostingsIterator>();
+			for (BooleanQuery operand : query.getOperands()) {
+				if (operand.getOperator() == BooleanQuery.Operator.NOT) {
+					PostingsIterator iterator = iterator(operand.getOperands().get(0), exact,
+							new ArrayList<PostingsIterator.LeafIterator>());
+					if (iterator != null) {
+						excluded.add(iterator);
+					}
+				} else {
+					PostingsIterator iterator = iterator(operand, exact, queryTerms);
+					if (iterator == null) {
+						return null;
+					}
+					iterators.add(iterator);
+				}
+			}
+			if (iterators.isEmpty()) {
+				return null;
+			}
+			terms.addAll(queryTerms);
+			return new PostingsIterator.AndIterator(iterators, excluded);
+		case OR:
+			for (BooleanQuery operand : query.getOperands()) {
+				PostingsIterator iterator = iterator(operand, exact, terms);
+				if (iterator != null) {
+					iterators.add(iterator);
+				}
+			}
+			if (iterators.isEmpty()) {
+				return null;
+			}
+			return iterators.size() == 1 ? iterators.get(0) : new PostingsIterator.OrIterator(iterators);
+		default:
+			// Excluding words from every document is not supported
+			return null;
 		}
 	}
+	
+	/**
+	 * Adds every word in the inverted index that starts with a prefix,
+	 * including words that have not been decoded from the snapshot yet. Each
+	 * word is added once, even if it was already decoded from the snapshot.
+	 * Must be called while holding the lock.
+	 * 
+	 * @param prefix
+	 *           prefix of the words
+	 * @param words
+	 *           collection to add the words to
+	 */
+	private void addPrefixWords(String prefix, Collection<String> words) {
+		Set<String> found = new LinkedHashSet<String>();
+		
+		// Words starting with the prefix are stored right after it
+		for (String invIdxWord : dictionary.tailMap(prefix).keySet()) {
+			if (!invIdxWord.startsWith(prefix)) {
+				break;
+			}
+			found.add(invIdxWord);
+		}
+		
+		// Words that have not been decoded yet are only in the snapshot
+		if (!loaded) {
+			int i = snapshot.find(prefix);
+			for (i = i < 0 ? -(i + 1) : i; i < snapshot.size(); i++) {
+				String invIdxWord = snapshot.getWord(i);
+				if (!invIdxWord.startsWith(prefix)) {
+					break;
+				}
+				found.add(invIdxWord);
+			}
+		}
+		
+		words.addAll(found);
+	}
 
 	/**
-	 * Returns partial search results from the inverted index, such that any 
-	 * word in the inverted index that starts with a query word is taken into
-	 * account.
+	 * Returns the search result of every document in the inverted index that
+	 * has a word starting with a query word, in no particular order. The
+	 * words of phrase and proximity clauses must match exactly.
 	 * 
 	 * @param query
-	 *            array of words to be searched for
-	 * @return list of sorted search results
+	 *            parsed query to be searched for
+	 * @return unsorted search results
 	 * @throws InterruptedException
 	 */
-	public List<QueryHelper.SearchResult> partialSearch(String[] query) throws InterruptedException {
-		HashMap<String,QueryHelper.SearchResult> usedFilenames = new HashMap<String,QueryHelper.SearchResult>();
+	public Collection<QueryHelper.SearchResult> partialMatches(QueryKey query) throws InterruptedException {
+		return partialMatches(query, scorer, getStatistics());
+	}
+
+	/**
+	 * Returns the search result of every document in the inverted index that
+	 * has a word starting with a query word, in no particular order, scored
+	 * with the given scorer and statistics.
+	 * 
+	 * @param query
+	 *            parsed query to be searched for
+	 * @param scorer
+	 *            scorer used to rank the search results
+	 * @param statistics
+	 *            collection statistics used by the scorer
+	 * @return unsorted search results
+	 * @throws InterruptedException
+	 * 
+	 * @see #partialMatches(QueryKey)
+	 */
+	public Collection<QueryHelper.SearchResult> partialMatches(QueryKey query, Scorer scorer,
+			IndexStatistics statistics) throws InterruptedException {
+		HashMap<Integer,QueryHelper.SearchResult> usedDocuments = new HashMap<Integer,QueryHelper.SearchResult>();
 		HashSet<String> validInvIdxWords = new HashSet<String>();
 		lock.lockReadOnly();
-		for (String word : query) {
-			for (String invIdxWord : invertedIndex.keySet()) {
-				if (invIdxWord.startsWith(word)) {
-					validInvIdxWords.add(invIdxWord);
-				}
-			}
+		for (String word : query.getWords()) {
+			addPrefixWords(word, validInvIdxWords);
 		}
 		for (String word : validInvIdxWords) {
-			search(usedFilenames, word);
+			search(usedDocuments, word, scorer, statistics);
+		}
+		for (ProximityQuery clause : query.getClauses()) {
+			search(usedDocuments, clause, scorer, statistics);
+		}
+		if (query.getBooleanQuery() != null) {
+			search(usedDocuments, query.getBooleanQuery(), false, scorer, statistics);
 		}
 		lock.unlockReadOnly();
-		List<QueryHelper.SearchResult> searchResults = new ArrayList<QueryHelper.SearchResult>();
-		searchResults.addAll(usedFilenames.values());
-		Collections.sort(searchResults, new Comparator<QueryHelper.SearchResult>() {
-			@Override
-			public int compare(QueryHelper.SearchResult a, QueryHelper.SearchResult b) {
-				return a.compareTo(b);
+		return usedDocuments.values();
+	}
+
+	/**
+	 * Returns the search result of every document in the inverted index that
+	 * has a word exactly matching a query word, or that matches a phrase or
+	 * proximity clause of the query, in no particular order.
+	 * 
+	 * @param query
+	 *            parsed query to be searched for
+	 * @return unsorted search results
+	 * @throws InterruptedException
+	 */
+	public Collection<QueryHelper.SearchResult> exactMatches(QueryKey query) throws InterruptedException {
+		return exactMatches(query, scorer, getStatistics());
+	}
+
+	/**
+	 * Returns the search result of every document in the inverted index that
+	 * has a word exactly matching a query word, or that matches a phrase or
+	 * proximity clause of the query, in no particular order, scored with the
+	 * given scorer and statistics.
+	 * 
+	 * @param query
+	 *            parsed query to be searched for
+	 * @param scorer
+	 *            scorer used to rank the search results
+	 * @param statistics
+	 *            collection statistics used by the scorer
+	 * @return unsorted search results
+	 * @throws InterruptedException
+	 * 
+	 * @see #exactMatches(QueryKey)
+	 */
+	public Collection<QueryHelper.SearchResult> exactMatches(QueryKey query, Scorer scorer,
+			IndexStatistics statistics) throws InterruptedException {
+		HashMap<Integer,QueryHelper.SearchResult> usedDocuments = new HashMap<Integer,QueryHelper.SearchResult>();
+		lock.lockReadOnly();
+		for (String word : query.getWords()) {
+			if (getPostings(word) != null) {
+				search(usedDocuments, word, scorer, statistics);
 			}
-		});
-		return searchResults;
+		}
+		for (ProximityQuery clause : query.getClauses()) {
+			search(usedDocuments, clause, scorer, statistics);
+		}
+		if (query.getBooleanQuery() != null) {
+			search(usedDocuments, query.getBooleanQuery(), true, scorer, statistics);
+		}
+		lock.unlockReadOnly();
+		return usedDocuments.values();
+	}
+
+	/**
+	 * Returns partial search results from the inverted index, such that any 
+	 * word in the inverted index that starts with a query word is taken into
+	 * account.
+	 * 
+	 * @param query
+	 *            array of words to be searched for
+	 * @return list of sorted search results
+	 * @throws InterruptedException
+	 */
+	public List<QueryHelper.SearchResult> partialSearch(String[] query) throws InterruptedException {
+		return partialSearch(new QueryKey(query), Integer.MAX_VALUE).getResults();
+	}
+
+	/**
+	 * Returns the best partial search results from the inverted index, along
+	 * with the number of documents that matched.
+	 * 
+	 * @param query
+	 *            parsed query to be searched for
+	 * @param limit
+	 *            largest number of search results to return
+	 * @return best search results and the number of matches
+	 * @throws InterruptedException
+	 * 
+	 * @see #partialSearch(String[])
+	 */
+	public TopResults partialSearch(QueryKey query, int limit) throws InterruptedException {
+		return TopResults.select(partialMatches(query), limit);
 	}
 
 	/**
@@ -316,25 +1149,279 @@ public class InvertedIndex {
 	 * @throws InterruptedException
 	 */
 	public List<QueryHelper.SearchResult> exactSearch(String[] query) throws InterruptedException {
-		HashMap<String,QueryHelper.SearchResult> usedFilenames = new HashMap<String,QueryHelper.SearchResult>();
+		return exactSearch(new QueryKey(query), Integer.MAX_VALUE).getResults();
+	}
+
+	/**
+	 * Returns the best exact search results from the inverted index, along
+	 * with the number of documents that matched.
+	 * 
+	 * @param query
+	 *            parsed query to be searched for
+	 * @param limit
+	 *            largest number of search results to return
+	 * @return best search results and the number of matches
+	 * @throws InterruptedException
+	 * 
+	 * @see #exactSearch(String[])
+	 */
+	public TopResults exactSearch(QueryKey query, int limit) throws InterruptedException {
+		return TopResults.select(exactMatches(query), limit);
+	}
+
+	/**
+	 * Searches for a whole batch of queries at once. Queries with the same
+	 * words are only searched for once, every distinct query word is looked
+	 * up or expanded into the words it is a prefix of only once, and the
+	 * postings of every word that is needed are scored only once and then
+	 * shared by every query that has the word. Both the needed words and the
+	 * queries are split into chunks that are searched for in parallel.
+	 *
+	 * @param queries
+	 *            queries to be searched for
+	 * @param exact
+	 *            whether to do exact searches or partial searches
+	 * @param limit
+	 *            largest number of search results to keep for each query
+	 * @param queue
+	 *            work queue to search with, or null to search with the
+	 *            current thread
+	 * @return best search results of each distinct query
+	 * @throws InterruptedException
+	 */
+	public Map<QueryKey, TopResults> batchSearch(Collection<QueryKey> queries, final boolean exact, final int limit,
+			WorkQueue queue) throws InterruptedException {
+		Set<QueryKey> distinct = new LinkedHashSet<QueryKey>(queries);
+
+		// Looks up each distinct query word only once
+		final Map<String, List<String>> expansions = new HashMap<String, List<String>>();
+		Set<String> needed = new LinkedHashSet<String>();
 		lock.lockReadOnly();
-		for (String word : query) {
-			if (invertedIndex.containsKey(word)) {
-				search(usedFilenames, word);
+		for (QueryKey query : distinct) {
+			for (String word : query.getWords()) {
+				if (expansions.containsKey(word)) {
+					continue;
+				}
+				List<String> words = new ArrayList<String>();
+				if (!exact) {
+					addPrefixWords(word, words);
+				} else if (getPostings(word) != null) {
+					words.add(word);
+				}
+				expansions.put(word, words);
+				needed.addAll(words);
 			}
 		}
 		lock.unlockReadOnly();
-		List<QueryHelper.SearchResult> searchResults = new ArrayList<QueryHelper.SearchResult>();
-		searchResults.addAll(usedFilenames.values());
-		Collections.sort(searchResults, new Comparator<QueryHelper.SearchResult>() {
-			@Override
-			public int compare(QueryHelper.SearchResult a, QueryHelper.SearchResult b) {
-				return a.compareTo(b);
+
+		final Scorer scorer = this.scorer;
+		final IndexStatistics statistics = getStatistics();
+		int chunks = queue == null ? 1 : queue.size() * 4;
+
+		// Scores the postings of each needed word only once
+		final Map<String, TermHits> hits = new ConcurrentHashMap<String, TermHits>();
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (final List<String> chunk : split(new ArrayList<String>(needed), chunks)) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					lock.lockReadOnly();
+					for (String word : chunk) {
+						hits.put(word, new TermHits(word, getPostings(word), documents, scorer, statistics));
+					}
+					lock.unlockReadOnly();
+				}
+			});
+		}
+		execute(tasks, queue);
+
+		// Fans the shared hits out to every query that has their words
+		final Map<QueryKey, TopResults> results = new ConcurrentHashMap<QueryKey, TopResults>();
+		tasks = new ArrayList<Runnable>();
+		for (final List<QueryKey> chunk : split(new ArrayList<QueryKey>(distinct), chunks)) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					lock.lockReadOnly();
+					for (QueryKey query : chunk) {
+						results.put(query, TopResults.select(
+								batchMatches(query, exact, expansions, hits, scorer, statistics), limit));
+					}
+					lock.unlockReadOnly();
+				}
+			});
+		}
+		execute(tasks, queue);
+		return results;
+	}
+
+	/**
+	 * Returns the search result of every document that matches a query of a
+	 * batch, in no particular order, just like {@link #exactMatches(QueryKey)}
+	 * or {@link #partialMatches(QueryKey)} would. Must be called while
+	 * holding the lock.
+	 *
+	 * @param query
+	 *            parsed query to be searched for
+	 * @param exact
+	 *            whether to do an exact search or a partial search
+	 * @param expansions
+	 *            words in the index that each plain query word matches
+	 * @param hits
+	 *            scored postings of every word in the index that is matched
+	 * @param scorer
+	 *            scorer used to rank the search results
+	 * @param statistics
+	 *            collection statistics used by the scorer
+	 * @return unsorted search results
+	 */
+	private Collection<QueryHelper.SearchResult> batchMatches(QueryKey query, boolean exact,
+			Map<String, List<String>> expansions, Map<String, TermHits> hits, Scorer scorer,
+			IndexStatistics statistics) {
+		HashMap<Integer,QueryHelper.SearchResult> usedDocuments = new HashMap<Integer,QueryHelper.SearchResult>();
+
+		// A partial search only counts a word once, even if many query words are its prefixes
+		Collection<String> validInvIdxWords = exact ? new ArrayList<String>() : new HashSet<String>();
+		for (String word : query.getWords()) {
+			validInvIdxWords.addAll(expansions.get(word));
+		}
+		for (String word : validInvIdxWords) {
+			hits.get(word).addTo(usedDocuments, documents);
+		}
+		for (ProximityQuery clause : query.getClauses()) {
+			search(usedDocuments, clause, scorer, statistics);
+		}
+		if (query.getBooleanQuery() != null) {
+			search(usedDocuments, query.getBooleanQuery(), exact, scorer, statistics);
+		}
+		return usedDocuments.values();
+	}
+
+	/**
+	 * Splits a list into at most the given number of chunks of about the
+	 * same size.
+	 *
+	 * @param list
+	 *            list to split
+	 * @param chunks
+	 *            largest number of chunks
+	 * @return chunks of the list, in order
+	 */
+	private static <T> List<List<T>> split(List<T> list, int chunks) {
+		List<List<T>> split = new ArrayList<List<T>>();
+		int size = (list.size() + chunks - 1) / chunks;
+		for (int i = 0; i < list.size(); i += size) {
+			split.add(list.subList(i, Math.min(i + size, list.size())));
+		}
+		return split;
+	}
+
+	/**
+	 * Runs tasks on a work queue and waits for all of them to finish, without
+	 * waiting for any other work on the queue. Runs the tasks with the
+	 * current thread if there is no work queue.
+	 *
+	 * @param tasks
+	 *            tasks to run
+	 * @param queue
+	 *            work queue to run the tasks on, or null
+	 * @throws InterruptedException
+	 */
+	private static void execute(List<Runnable> tasks, WorkQueue queue) throws InterruptedException {
+		if (queue == null) {
+			for (Runnable task : tasks) {
+				task.run();
 			}
-		});
-		return searchResults;
+			return;
+		}
+
+		final CountDownLatch done = new CountDownLatch(tasks.size());
+		for (final Runnable task : tasks) {
+			queue.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		done.await();
 	}
-	
+
+	/**
+	 * Holds what a single word adds to the search result of every document
+	 * it appears in, so a batch of queries only scores each word once.
+	 */
+	private static class TermHits {
+
+		private final int[] documents;
+		private final int[] counts;
+		private final int[] firstPositions;
+		private final double[] scores;
+
+		/**
+		 * Scores the postings of a word.
+		 *
+		 * @param word
+		 *            word the postings belong to
+		 * @param postings
+		 *            postings of the word
+		 * @param table
+		 *            document table used to look up the length of each document
+		 * @param scorer
+		 *            scorer used to score the word in each document
+		 * @param statistics
+		 *            collection statistics used by the scorer
+		 */
+		public TermHits(String word, Postings postings, DocumentTable table, Scorer scorer,
+				IndexStatistics statistics) {
+			int numOfDocuments = statistics.getDocumentCount();
+			double averageLength = statistics.getAverageLength();
+			int documentFrequency = statistics.getDocumentFrequency(word);
+			synchronized (postings) {
+				documents = new int[postings.size()];
+				counts = new int[documents.length];
+				firstPositions = new int[documents.length];
+				scores = new double[documents.length];
+				for (int i = 0; i < documents.length; i++) {
+					PositionList listOfPos = postings.getPositions(i);
+					documents[i] = postings.getDocument(i);
+					counts[i] = listOfPos.size();
+					firstPositions[i] = listOfPos.first();
+					scores[i] = scorer.score(counts[i], documentFrequency, table.getLength(documents[i]),
+							numOfDocuments, averageLength);
+				}
+			}
+		}
+
+		/**
+		 * Adds the word to the search results of the documents it appears in,
+		 * creating search results for documents that do not have one yet.
+		 *
+		 * @param usedDocuments
+		 *           map containing mappings of a document ID and its search result
+		 * @param table
+		 *           document table used to resolve the IDs of new search results
+		 */
+		public void addTo(HashMap<Integer,QueryHelper.SearchResult> usedDocuments, DocumentTable table) {
+			for (int i = 0; i < documents.length; i++) {
+				QueryHelper.SearchResult sr = usedDocuments.get(documents[i]);
+				if (sr == null) {
+					sr = new QueryHelper.SearchResult(documents[i], table);
+					usedDocuments.put(documents[i], sr);
+				}
+				sr.setCount(sr.getCount() + counts[i]);
+				sr.setScore(sr.getScore() + scores[i]);
+				if (firstPositions[i] < sr.getFirstPos()) {
+					sr.setFirstPos(firstPositions[i]);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Writes the contents of an inverted index in alphabetically sorted order
 	 * as a nested JSON object using a "pretty" format with tab characters for 
@@ -347,7 +1434,55 @@ public class InvertedIndex {
 	 */
 	public synchronized void asObject(Path outpath) throws IOException, InterruptedException {
 		Files.createFile(outpath);
-		new IndexJSONWriter().asObject(this, outpath);
+		loadAll();
+		new IndexJSONWriter(rankDocuments()).asObject(outpath);
+	}
+	
+	/**
+	 * Writes the contents of an inverted index in alphabetically sorted order
+	 * as a nested JSON object using a "pretty" format with tab characters for 
+	 * indentation to a file. Ranges of words are written in parallel using
+	 * the worker threads of the work queue. Must not be called from a worker
+	 * thread of the work queue.
+	 * 
+	 * @param outpath
+	 *              path to write the file to
+	 * @param queue
+	 *              work queue with multiple worker threads
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public synchronized void asObject(Path outpath, WorkQueue queue) throws IOException, InterruptedException {
+		Files.createFile(outpath);
+		loadAll();
+		new IndexJSONWriter(rankDocuments()).asObject(outpath, queue);
+	}
+	
+	/**
+	 * Sorts the documents by their paths.
+	 * 
+	 * @return rank of the path of each document in sorted order, indexed by
+	 *         document ID
+	 */
+	private int[] rankDocuments() {
+		final String[] paths = new String[documents.size()];
+		Integer[] order = new Integer[paths.length];
+		for (int id = 0; id < paths.length; id++) {
+			paths[id] = documents.getPath(id);
+			order[id] = id;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return paths[a].compareTo(paths[b]);
+			}
+		});
+		
+		int[] ranks = new int[paths.length];
+		for (int i = 0; i < order.length; i++) {
+			ranks[order[i]] = i;
+		}
+		return ranks;
 	}
 	
 	/**
@@ -356,17 +1491,90 @@ public class InvertedIndex {
 	 * @return size of the inverted index
 	 */
 	public synchronized int size() {
-		return invertedIndex.size();
+		if (snapshot == null) {
+			return invertedIndex.size();
+		}
+		return snapshot.size() + addedWords.get();
+	}
+
+	/**
+	 * Tests whether a document with the specified path or URL has been
+	 * added to the inverted index.
+	 *
+	 * @param pathString
+	 *              path or URL of the document
+	 * @return true if the document is in the inverted index
+	 */
+	public boolean containsDocument(String pathString) {
+		return documents.getId(pathString) >= 0;
+	}
+
+	/**
+	 * Returns the ID of the document with the specified path or URL.
+	 *
+	 * @param pathString
+	 *              path or URL of the document
+	 * @return ID of the document, or -1 if the document is not in the index
+	 */
+	public int getDocumentId(String pathString) {
+		return documents.getId(pathString);
+	}
+
+	/**
+	 * Returns the path or URL of the document with the specified ID.
+	 *
+	 * @param id
+	 *              ID of the document
+	 * @return path or URL of the document
+	 */
+	public String getDocumentPath(int id) {
+		return documents.getPath(id);
 	}
 	
 	/**
-	 * Returns the inverted index sorted by the words.
+	 * Returns the number of documents that have been added to the inverted
+	 * index.
+	 * 
+	 * @return number of documents
+	 */
+	public int getDocumentCount() {
+		return documents.size();
+	}
+	
+	/**
+	 * Returns the inverted index sorted by the words. The copy is built from
+	 * the sorted dictionary, which takes linear time.
 	 * 
 	 * @return inverted index as a TreeMap
 	 * @throws InterruptedException
 	 */
-	public synchronized TreeMap<String,HashMap<String,List<Integer>>> toTreeMap() throws InterruptedException {
-		return new TreeMap<String,HashMap<String,List<Integer>>>(invertedIndex);
+	public synchronized TreeMap<String,Postings> toTreeMap() throws InterruptedException {
+		loadAll();
+		return new TreeMap<String,Postings>(dictionary);
+	}
+	
+	/**
+	 * Writes a compact binary snapshot of the inverted index to a file, which
+	 * can be opened much faster than the index can be rebuilt. Documents can
+	 * not be added while the snapshot is written.
+	 * 
+	 * @param outpath
+	 *              path to write the snapshot to
+	 * @throws IOException
+	 * 
+	 * @see IndexSnapshot#open(Path)
+	 * @see #InvertedIndex(IndexSnapshot)
+	 */
+	public void writeSnapshot(Path outpath) throws IOException {
+		// Documents are added under the read lock, so only the write lock
+		// keeps the postings consistent with the documents written
+		lock.lockReadWrite();
+		try {
+			loadAll();
+			IndexSnapshot.write(dictionary, documents, outpath);
+		} finally {
+			lock.unlockReadWrite();
+		}
 	}
 	
 	/**
@@ -381,7 +1589,30 @@ public class InvertedIndex {
 	 *            work queue with multiple worker threads
 	 */
 	public static void threadsBuildIndex(Path indexInput, InvertedIndex index, WorkQueue queue) {
-		queue.execute(new IndexTask(indexInput, index, queue));
+		queue.execute(new IndexTask(indexInput, index, null, queue));
+	}
+	
+	/**
+	 * Uses a work queue to build an inverted index from a directory of files using multiple
+	 * worker threads. Each worker thread adds the files it parses to its own private index,
+	 * so the workers never wait on each other. Once all files are parsed, the private
+	 * indexes are merged into the given index in parallel. Waits for all work to finish.
+	 * 
+	 * @param indexInput
+	 *            the first file to parse to create the inverted index
+	 * @param index
+	 *            the inverted index that is going to be built
+	 * @param queue
+	 *            work queue with multiple worker threads
+	 * @throws InterruptedException
+	 * 
+	 * @see #addIndexestoIndex(List, WorkQueue)
+	 */
+	public static void threadsBuildLocalIndex(Path indexInput, InvertedIndex index, WorkQueue queue) throws InterruptedException {
+		ConcurrentHashMap<Thread,InvertedIndex> localIndexes = new ConcurrentHashMap<Thread,InvertedIndex>();
+		queue.execute(new IndexTask(indexInput, index, localIndexes, queue));
+		queue.finish();
+		index.addIndexestoIndex(new ArrayList<InvertedIndex>(localIndexes.values()), queue);
 	}
 	
 	/**
@@ -393,11 +1624,26 @@ public class InvertedIndex {
 		
 		private final Path file;
 		private final InvertedIndex index;
+		private final ConcurrentHashMap<Thread,InvertedIndex> localIndexes;
 		private final WorkQueue queue;
 		
-		public IndexTask(Path file, InvertedIndex index, WorkQueue queue) {
+		/**
+		 * Initializes the task.
+		 * 
+		 * @param file
+		 *            path to the file or directory to parse
+		 * @param index
+		 *            the inverted index that is going to be built
+		 * @param localIndexes
+		 *            private index of each worker thread, or null to add files
+		 *            directly to the shared index
+		 * @param queue
+		 *            work queue with multiple worker threads
+		 */
+		public IndexTask(Path file, InvertedIndex index, ConcurrentHashMap<Thread,InvertedIndex> localIndexes, WorkQueue queue) {
 			this.file = file;
 			this.index = index;
+			this.localIndexes = localIndexes;
 			this.queue = queue;
 		}
 
@@ -407,15 +1653,63 @@ public class InvertedIndex {
 				if (Files.isDirectory(file)) {
 					try (DirectoryStream<Path> ds = Files.newDirectoryStream(file)) {
 					    for (Path dspath : ds) {
-					    	queue.execute(new IndexTask(dspath, index, queue));
+					    	if (isHTMLFile(dspath) || Files.isDirectory(dspath)) {
+					    		queue.execute(new IndexTask(dspath, index, localIndexes, queue));
+					    	}
 					    }
 					} 
-		    	} else {
+		    	} else if (localIndexes == null) {
 	    			index.checkAndParseFile(file);
+		    	} else {
+		    		// Only the current thread ever adds its own entry
+		    		InvertedIndex localIndex = localIndexes.get(Thread.currentThread());
+		    		if (localIndex == null) {
+		    			localIndex = new InvertedIndex();
+		    			localIndexes.put(Thread.currentThread(), localIndex);
+		    		}
+		    		localIndex.checkAndParseFile(file);
 		    	}
 			} catch (IOException | InterruptedException e) {
 				e.printStackTrace();
 			}
 		}
 	}
+	
+	/**
+	 * Runnable task that merges the words within a sorted range from several inverted
+	 * indexes into this index.
+	 */
+	private class MergeTask implements Runnable {
+		
+		private final String from;
+		private final String to;
+		private final List<InvertedIndex> indexesToAdd;
+		private final List<int[]> ids;
+		
+		/**
+		 * Initializes the task.
+		 * 
+		 * @param from
+		 *            first word of the range, or null to start at the first word
+		 * @param to
+		 *            word after the range, or null to end at the last word
+		 * @param indexesToAdd
+		 *            indexes to merge with
+		 * @param ids
+		 *            document ID mappings of each index to merge with
+		 */
+		public MergeTask(String from, String to, List<InvertedIndex> indexesToAdd, List<int[]> ids) {
+			this.from = from;
+			this.to = to;
+			this.indexesToAdd = indexesToAdd;
+			this.ids = ids;
+		}
+		
+		@Override
+		public void run() {
+			for (int i = 0; i < indexesToAdd.size(); i++) {
+				mergeWords(range(indexesToAdd.get(i).dictionary, from, to), ids.get(i));
+			}
+		}
+	}
 }
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.net.Socket;
 import java.util.HashMap;
 import java.util.List;
@@ -44,13 +45,35 @@ public class LinkParser {
 	 * @see {@link HTTP}
 	 */
 	public static String craftHTTPRequest(URL url, HTTP type) {
+		return craftHTTPRequest(url, type, false);
+	}
+
+	/**
+	 * Crafts a minimal HTTP/1.1 request for the provided method, asking the
+	 * server to either keep the connection open for more requests or close
+	 * it after the response.
+	 *
+	 * @param url
+	 *            - url to fetch
+	 * @param type
+	 *            - HTTP method to use
+	 * @param keepAlive
+	 *            - whether the connection should stay open
+	 *
+	 * @return HTTP/1.1 request
+	 *
+	 * @see {@link HTTP}
+	 * @see HttpConnectionPool
+	 */
+	public static String craftHTTPRequest(URL url, HTTP type, boolean keepAlive) {
 		String host = url.getHost();
 		String resource = url.getFile().isEmpty() ? "/" : url.getFile();
+		String connection = keepAlive ? "keep-alive" : "close";
 
 		// The specification is specific about where to use a new line
 		// versus a carriage return!
-		return String.format("%s %s %s\r\n" + "Host: %s\r\n" + "Connection: close\r\n" + "\r\n", type.name(), resource,
-				version, host);
+		return String.format("%s %s %s\r\n" + "Host: %s\r\n" + "Connection: %s\r\n" + "\r\n", type.name(), resource,
+				version, host, connection);
 	}
 
 	/**
@@ -129,25 +152,85 @@ public class LinkParser {
 			return null;
 		}
 
+		return getHTML(lines);
+	}
+
+	/**
+	 * Fetches the HTML (without any HTTP headers) for the provided URL on a
+	 * pooled connection, which is kept open for the next page on the same
+	 * host. The HTML is written to the writer while it is read, and the
+	 * writer is closed once the whole page was written. Nothing is written
+	 * if the link does not point to a HTML page.
+	 *
+	 * @param url
+	 *            url to fetch HTML from
+	 * @param pool
+	 *            pool of connections to fetch with
+	 * @param html
+	 *            writer to stream the HTML into
+	 * @return true if the whole HTML page was written, false if the link was
+	 *         not HTML or the page could not be fetched
+	 *
+	 * @see HttpConnectionPool#fetchHTML(URL, Writer)
+	 * @see HttpConnectionPool#getStatistics()
+	 */
+	public static boolean fetchHTML(URL url, HttpConnectionPool pool, Writer html) {
+		try {
+			if (!pool.fetchHTML(url, html)) {
+				return false;
+			}
+			html.close();
+			return true;
+		} catch (IOException e) {
+			// Counted in the crawl statistics of the pool
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the HTML (without any HTTP headers) of the lines of a response.
+	 * Will return null if the response is not a HTML page.
+	 *
+	 * @param lines
+	 *            lines of the response, starting with the status line
+	 * @return HTML as a String or null if the response was not HTML
+	 */
+	public static String getHTML(List<String> lines) {
 		int start = 0;
 		int end = lines.size();
 
 		// Determines start of HTML versus headers.
-		while (!lines.get(start).trim().isEmpty() && start < end) {
+		while (start < end && !lines.get(start).trim().isEmpty()) {
 			start++;
 		}
 
-		// Double-check this is an HTML file.
-		Map<String, String> fields = parseHeaders(lines.subList(0, start + 1));
-		String type = fields.get("Content-Type");
+		if (start == end) {
+			return null;
+		}
 
-		if (type != null && type.toLowerCase().contains("html")) {
+		// Double-check this is an HTML file.
+		if (isHTML(lines.subList(0, start + 1))) {
 			return String.join(System.lineSeparator(), lines.subList(start + 1, end));
 		}
 
 		return null;
 	}
 
+	/**
+	 * Tests whether the HTTP headers of a response say its body is HTML.
+	 *
+	 * @param headers
+	 *            - HTTP/1.1 header lines, starting with the status line
+	 * @return true if the Content-Type of the response is HTML
+	 */
+	public static boolean isHTML(List<String> headers) {
+		String type = parseHeaders(headers).get("Content-Type");
+		return type != null && type.toLowerCase().contains("html");
+	}
+
 	/**
 	 * Returns a list of all the HTTP(S) links found in the href attribute of the
 	 * anchor tags in the provided HTML. The links will be converted to absolute
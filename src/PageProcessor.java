@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Processes a crawled page in a single pass over its HTML, finding the links
+ * of its anchor tags while its text is cleaned and parsed into words. The
+ * page is written to the processor as it is read, so it is never copied or
+ * scanned again, and no regular expression is compiled for any tag.
+ *
+ * Finds the same links as {@link LinkParser#listLinks(URL, String)}: an
+ * anchor tag starts with {@code <a } in any case and ends at the next
+ * {@code >}, quotes are ignored and line breaks count as spaces, and the link
+ * is the value of the first {@code href} attribute, up to the next
+ * whitespace. Unlike {@code listLinks}, a malformed link is skipped instead
+ * of ending the search for links.
+ *
+ * @see LinkParser#listLinks(URL, String)
+ * @see HTMLStripper
+ *
+ * @author Anthony Panisales
+ */
+public class PageProcessor extends Writer {
+
+	private static final String ANCHOR = "<a ";
+	private static final String HREF = "href";
+
+	private final URL base;
+	private final ArrayList<URL> links;
+	private final WordParser.WordWriter words;
+	private final HTMLStripper stripper;
+
+	/** Characters of the anchor tag after its start so far. */
+	private final StringBuilder tag;
+
+	/** Number of characters of the start of an anchor tag matched so far. */
+	private int matched;
+
+	/**
+	 * Initializes a processor.
+	 *
+	 * @param base
+	 *            url of the page, used to convert relative links to absolute
+	 * @param sink
+	 *            sink to pass each word of the page and its position to,
+	 *            starting at position 1
+	 */
+	public PageProcessor(URL base, ObjIntConsumer<String> sink) {
+		this.base = base;
+		this.links = new ArrayList<>();
+		this.words = new WordParser.WordWriter(sink);
+		this.stripper = new HTMLStripper(words);
+		this.tag = new StringBuilder();
+		this.matched = 0;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		stripper.write(cbuf, off, len);
+		for (int i = off; i < off + len; i++) {
+			char c = cbuf[i];
+			if (c == '"') {
+				continue;
+			}
+			if (c == '\n' || c == '\r') {
+				// A page read line by line has no carriage returns left
+				c = ' ';
+			}
+
+			if (matched == ANCHOR.length()) {
+				if (c == '>') {
+					addLink();
+					tag.setLength(0);
+					matched = 0;
+				} else {
+					tag.append(c);
+				}
+			} else if (c == ANCHOR.charAt(matched) || (matched == 1 && c == 'A')) {
+				matched++;
+			} else {
+				matched = c == '<' ? 1 : 0;
+			}
+		}
+	}
+
+	/**
+	 * Adds the link of the anchor tag that just ended, if it has one.
+	 */
+	private void addLink() {
+		String href = findHref(tag);
+		if (href == null) {
+			return;
+		}
+		try {
+			URL absolute = LinkParser.clean(new URL(base, href));
+			if (absolute.getProtocol().startsWith("http")) {
+				links.add(absolute);
+			}
+		}
+		catch (MalformedURLException e) {
+			// Skips the link, like a browser would
+		}
+	}
+
+	/**
+	 * Finds the value of the first href attribute of a tag, the same way as
+	 * the regular expressions of {@link LinkParser#listLinks(URL, String)}.
+	 *
+	 * @param tag
+	 *            characters of the tag after its start, without quotes
+	 * @return value of the attribute, or null if the tag has none
+	 */
+	private static String findHref(CharSequence tag) {
+		int length = tag.length();
+		for (int i = 0; i + HREF.length() <= length; i++) {
+			if (!matchesHref(tag, i)) {
+				continue;
+			}
+			int j = skipSpace(tag, i + HREF.length());
+			if (j == length || tag.charAt(j) != '=') {
+				continue;
+			}
+			int start = skipSpace(tag, j + 1);
+			int end = start;
+			while (end < length && !isSpace(tag.charAt(end))) {
+				end++;
+			}
+			return removeHrefs(tag, start, end);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes every {@code href=} from a value in any case, in one pass from
+	 * left to right.
+	 */
+	private static String removeHrefs(CharSequence tag, int start, int end) {
+		StringBuilder href = new StringBuilder(end - start);
+		int i = start;
+		while (i < end) {
+			if (i + HREF.length() < end && matchesHref(tag, i) && tag.charAt(i + HREF.length()) == '=') {
+				i += HREF.length() + 1;
+			} else {
+				href.append(tag.charAt(i++));
+			}
+		}
+		return href.toString();
+	}
+
+	/**
+	 * Tests whether "href" in any case starts at an index.
+	 */
+	private static boolean matchesHref(CharSequence text, int index) {
+		for (int i = 0; i < HREF.length(); i++) {
+			char c = text.charAt(index + i);
+			char expected = HREF.charAt(i);
+			if (c != expected && c != expected - ('a' - 'A')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the first character at or after an index that is
+	 * not whitespace.
+	 */
+	private static int skipSpace(CharSequence text, int index) {
+		while (index < text.length() && isSpace(text.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Tests whether a character matches {@code \s}.
+	 */
+	private static boolean isSpace(char c) {
+		return c == ' ' || (c >= '\t' && c <= '\r');
+	}
+
+	/**
+	 * Does nothing, since the words of the page are only complete once the
+	 * processor is closed.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Ends the page, passing its last words to the sink.
+	 */
+	@Override
+	public void close() throws IOException {
+		stripper.close();
+	}
+
+	/**
+	 * Returns the links found so far, in the order they were found.
+	 *
+	 * @return cleaned list of all http(s) links
+	 */
+	public ArrayList<URL> getLinks() {
+		return links;
+	}
+
+	/**
+	 * Returns the number of words found so far.
+	 *
+	 * @return number of words passed to the sink
+	 */
+	public int getWordCount() {
+		return words.getCount();
+	}
+
+	/**
+	 * Processes a whole page.
+	 *
+	 * @param base
+	 *            url of the page, used to convert relative links to absolute
+	 * @param html
+	 *            raw html of the page
+	 * @param sink
+	 *            sink to pass each word of the page and its position to,
+	 *            starting at position 1
+	 * @return cleaned list of all http(s) links in the order they were found
+	 */
+	public static ArrayList<URL> process(URL base, CharSequence html, ObjIntConsumer<String> sink) {
+		PageProcessor processor = new PageProcessor(base, sink);
+		CharBuffer buffer = CharBuffer.wrap(html);
+		char[] chunk = new char[8192];
+		try {
+			while (buffer.hasRemaining()) {
+				int read = Math.min(chunk.length, buffer.remaining());
+				buffer.get(chunk, 0, read);
+				processor.write(chunk, 0, read);
+			}
+			processor.close();
+		}
+		catch (IOException e) {
+			// A word writer never throws
+		}
+		return processor.getLinks();
+	}
+}
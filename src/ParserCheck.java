@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Checks that the single pass word parser gives the same words as cleaning
+ * and splitting the text with regular expressions, both on the whole text and
+ * when the text is written in random chunks. Texts are random joins of pieces
+ * chosen to be hard to parse, such as combining marks, lone surrogates and
+ * letters that change length when lowercased, and optionally the files of a
+ * directory.
+ *
+ * <pre>
+ * java ParserCheck [-path path] [-texts num] [-seed num]
+ * </pre>
+ *
+ * @author Anthony Panisales
+ */
+public class ParserCheck extends RandomTextCheck {
+
+	/** Pieces random texts are joined from. */
+	private static final String[] PIECES = {
+			"a", "e", "I", "i", "A", "Z", "\u0130", "\u0131", "\u00df", "\u1e9e", "\u01c5", "\u212a", "\u2126",
+			"\u03a3", "\u03c3", "\u0301", "\u0307", "\u0327", "\u0338", "\u0345", "\u1100", "\u1161", "\u11a8",
+			"\ud801\udc00", "\ud83d\ude00", "\ud801", "\udc00", " ", "\n", "\u00a0", "\u2028", "\u3000", "<", ">",
+			"=", "-", ";", "&"
+	};
+
+	public ParserCheck() {
+		super(PIECES, 12);
+	}
+
+	public static void main(String[] args) throws IOException {
+		new ParserCheck().run(args);
+	}
+
+	/**
+	 * Checks that a text parses into the same words every way.
+	 */
+	@Override
+	protected void check(String text, Random random) {
+		List<String> expected = Arrays.asList(WordParser.split(WordParser.clean(text)));
+
+		WordList whole = new WordList();
+		WordParser.parseWords(text, whole);
+		compare(text, "whole", expected, whole);
+
+		WordList chunked = new WordList();
+		WordParser.WordWriter writer = new WordParser.WordWriter(chunked);
+		write(writer, text, random);
+		writer.close();
+		compare(text, "chunked", expected, chunked);
+	}
+
+	/**
+	 * Writes a text in chunks of random sizes.
+	 */
+	private void write(WordParser.WordWriter writer, String text, Random random) {
+		char[] chars = text.toCharArray();
+		int i = 0;
+		while (i < chars.length) {
+			int length = Math.min(1 + random.nextInt(7), chars.length - i);
+			writer.write(chars, i, length);
+			i += length;
+		}
+	}
+
+	/**
+	 * Compares the words a parser found with the expected words.
+	 */
+	private void compare(String text, String parser, List<String> expected, WordList actual) {
+		if (!actual.words.equals(expected) || !actual.inOrder) {
+			fail(parser + " parser", text, expected.toString(), actual.words.toString());
+		}
+	}
+
+	/**
+	 * Collects the words passed to it, and whether their positions counted up
+	 * from 1.
+	 */
+	private static class WordList implements ObjIntConsumer<String> {
+
+		private final List<String> words = new ArrayList<>();
+		private boolean inOrder = true;
+
+		@Override
+		public void accept(String word, int position) {
+			words.add(word);
+			inOrder &= position == words.size();
+		}
+	}
+}
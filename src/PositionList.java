@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+/**
+ * Growable list of word positions backed by a primitive int array. Positions
+ * are kept in sorted order without duplicates, which avoids boxing every
+ * position as an {@link Integer} inside the inverted index.
+ *
+ * @author Anthony Panisales
+ */
+public class PositionList {
+
+	/** The default capacity of a new position list. */
+	private static final int DEFAULT_CAPACITY = 4;
+
+	/** Stores the positions in sorted order. */
+	private int[] positions;
+
+	/** The number of positions stored in the list. */
+	private int size;
+
+	/**
+	 * Initializes an empty position list.
+	 */
+	public PositionList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Initializes an empty position list with the specified capacity.
+	 *
+	 * @param capacity
+	 *            number of positions the list can hold before growing
+	 */
+	public PositionList(int capacity) {
+		positions = new int[Math.max(capacity, 1)];
+		size = 0;
+	}
+
+	/**
+	 * Adds a position to the list, keeping the list sorted. Positions that are
+	 * already in the list are ignored. Positions are normally found in
+	 * increasing order, so the common case is a simple append.
+	 *
+	 * @param position
+	 *            position to add
+	 * @return true if the position was not already in the list
+	 */
+	public boolean add(int position) {
+		if (size == 0 || positions[size-1] < position) {
+			ensureCapacity(size + 1);
+			positions[size++] = position;
+			return true;
+		}
+
+		int index = Arrays.binarySearch(positions, 0, size, position);
+		if (index >= 0) {
+			return false;
+		}
+
+		index = -(index + 1);
+		ensureCapacity(size + 1);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		positions[index] = position;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Returns the position stored at the specified index.
+	 *
+	 * @param index
+	 *            index of the position to return
+	 * @return position at the index
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return positions[index];
+	}
+
+	/**
+	 * Returns the index of the first position that is greater than or equal
+	 * to the target, starting from the given index. Gallops ahead in steps
+	 * that double in size before a binary search, so skipping over a run of
+	 * positions only takes logarithmic time in the length of the run.
+	 *
+	 * @param target
+	 *            smallest position to look for
+	 * @param from
+	 *            index to start looking from
+	 * @return index of the first position at or after from that is at least
+	 *         the target, or the size of the list if there is none
+	 */
+	public int advance(int target, int from) {
+		if (from >= size || positions[from] >= target) {
+			return Math.min(from, size);
+		}
+
+		// Every position up to low is smaller than the target
+		int low = from;
+		int step = 1;
+		while (low + step < size && positions[low + step] < target) {
+			low += step;
+			step <<= 1;
+		}
+		int high = Math.min(low + step, size);
+		int index = Arrays.binarySearch(positions, low + 1, high, target);
+		return index >= 0 ? index : -(index + 1);
+	}
+
+	/**
+	 * Returns the earliest position in the list.
+	 *
+	 * @return first position, or {@link Integer#MAX_VALUE} if the list is empty
+	 */
+	public int first() {
+		return size == 0 ? Integer.MAX_VALUE : positions[0];
+	}
+
+	/**
+	 * Returns the number of positions in the list.
+	 *
+	 * @return number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a copy of this list whose backing array is exactly as large as
+	 * the number of positions stored.
+	 *
+	 * @return trimmed copy of the position list
+	 */
+	public PositionList copy() {
+		PositionList copy = new PositionList(size);
+		System.arraycopy(positions, 0, copy.positions, 0, size);
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * Grows the backing array so it can hold at least the specified number of
+	 * positions.
+	 *
+	 * @param capacity
+	 *            minimum number of positions to hold
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(capacity, positions.length * 2));
+		}
+	}
+
+	/**
+	 * Returns a string representation of this list.
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(Arrays.copyOf(positions, size));
+	}
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * Postings of a single word in an inverted index. Stores the IDs of the
+ * documents the word was found in, in increasing order, along with the
+ * positions of the word within each of those documents.
+ *
+ * @author Anthony Panisales
+ */
+public class Postings {
+
+	/** Stores the document IDs in increasing order. */
+	private int[] documents;
+
+	/** Stores the positions of the word, parallel to the document IDs. */
+	private PositionList[] positions;
+
+	/** The number of documents stored in the postings. */
+	private int size;
+
+	/**
+	 * Initializes empty postings.
+	 */
+	public Postings() {
+		documents = new int[2];
+		positions = new PositionList[2];
+		size = 0;
+	}
+
+	/**
+	 * Sets the positions of the word within a document. Document IDs are
+	 * normally assigned in increasing order, so the common case is a simple
+	 * append. If the document is already in the postings, its positions are
+	 * replaced.
+	 *
+	 * @param document
+	 *            ID of the document
+	 * @param list
+	 *            positions of the word within the document
+	 */
+	public void put(int document, PositionList list) {
+		if (size == 0 || documents[size-1] < document) {
+			ensureCapacity(size + 1);
+			documents[size] = document;
+			positions[size] = list;
+			size++;
+			return;
+		}
+
+		int index = Arrays.binarySearch(documents, 0, size, document);
+		if (index >= 0) {
+			positions[index] = list;
+			return;
+		}
+
+		index = -(index + 1);
+		ensureCapacity(size + 1);
+		System.arraycopy(documents, index, documents, index + 1, size - index);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		documents[index] = document;
+		positions[index] = list;
+		size++;
+	}
+
+	/**
+	 * Returns the index of the first document ID that is greater than or
+	 * equal to the target, starting from the given index. Gallops ahead in
+	 * steps that double in size before a binary search, so skipping over a
+	 * run of documents only takes logarithmic time in the length of the run.
+	 *
+	 * @param document
+	 *            smallest document ID to look for
+	 * @param from
+	 *            index to start looking from
+	 * @return index of the first document at or after from whose ID is at
+	 *         least the target, or the size of the postings if there is none
+	 */
+	public int advance(int document, int from) {
+		if (from >= size || documents[from] >= document) {
+			return Math.min(from, size);
+		}
+
+		// Every document up to low is smaller than the target
+		int low = from;
+		int step = 1;
+		while (low + step < size && documents[low + step] < document) {
+			low += step;
+			step <<= 1;
+		}
+		int high = Math.min(low + step, size);
+		int index = Arrays.binarySearch(documents, low + 1, high, document);
+		return index >= 0 ? index : -(index + 1);
+	}
+
+	/**
+	 * Returns the index of a document within the postings.
+	 *
+	 * @param document
+	 *            ID of the document to look for
+	 * @return index of the document, or a negative value if not found
+	 */
+	public int find(int document) {
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Returns the document ID stored at the specified index.
+	 *
+	 * @param index
+	 *            index within the postings
+	 * @return document ID at the index
+	 */
+	public int getDocument(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * Returns the positions stored at the specified index.
+	 *
+	 * @param index
+	 *            index within the postings
+	 * @return positions of the word within the document at the index
+	 */
+	public PositionList getPositions(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * Returns the number of documents the word was found in.
+	 *
+	 * @return number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Grows the backing arrays so they can hold at least the specified number
+	 * of documents.
+	 *
+	 * @param capacity
+	 *            minimum number of documents to hold
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > documents.length) {
+			int length = Math.max(capacity, documents.length * 2);
+			documents = Arrays.copyOf(documents, length);
+			positions = Arrays.copyOf(positions, length);
+		}
+	}
+}
@@ -0,0 +1,371 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Walks the document IDs of one or more postings in increasing order. An
+ * iterator can skip ahead to a target document ID without visiting the
+ * documents in between, which lets a conjunction be driven by its rarest
+ * term so that its cost depends on the smallest postings rather than the
+ * largest.
+ *
+ * @author Anthony Panisales
+ */
+public abstract class PostingsIterator {
+
+	/** Document ID returned once an iterator has no more documents. */
+	public static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+	/** Orders iterators from the fewest to the most documents. */
+	private static final Comparator<PostingsIterator> BY_COST = new Comparator<PostingsIterator>() {
+		@Override
+		public int compare(PostingsIterator a, PostingsIterator b) {
+			return Integer.compare(a.cost(), b.cost());
+		}
+	};
+
+	/**
+	 * Returns the current document ID.
+	 *
+	 * @return current document ID, -1 before the first call to advance, or
+	 *         {@link #NO_MORE_DOCUMENTS} once there are no more documents
+	 */
+	public abstract int document();
+
+	/**
+	 * Moves to the first document whose ID is at least the target. Does not
+	 * move if the current document is already at least the target, so the
+	 * targets passed to an iterator must never decrease.
+	 *
+	 * @param target
+	 *            smallest document ID to move to
+	 * @return new current document ID, or {@link #NO_MORE_DOCUMENTS}
+	 */
+	public abstract int advance(int target);
+
+	/**
+	 * Returns an estimate of how many documents the iterator can visit.
+	 *
+	 * @return largest number of documents the iterator can visit
+	 */
+	public abstract int cost();
+
+	/**
+	 * Walks the documents of a part of a query that is scored on its own, a
+	 * word or a phrase or proximity clause, and tells how it appears in the
+	 * current document.
+	 */
+	public static abstract class LeafIterator extends PostingsIterator {
+
+		/**
+		 * Returns the word, or the canonical form of the clause.
+		 *
+		 * @return word or clause the iterator walks the documents of
+		 */
+		public abstract String getWord();
+
+		/**
+		 * Returns the number of times the word or clause appears in the
+		 * current document.
+		 *
+		 * @return number of occurrences in the current document
+		 */
+		public abstract int getCount();
+
+		/**
+		 * Returns the earliest position the word or clause appears at in the
+		 * current document.
+		 *
+		 * @return first position in the current document
+		 */
+		public abstract int getFirst();
+
+		/**
+		 * Returns the number of documents the word or clause appears in.
+		 *
+		 * @param statistics
+		 *            collection statistics of the search
+		 * @return document frequency used to score the word or clause
+		 */
+		public abstract int getDocumentFrequency(IndexStatistics statistics);
+	}
+
+	/**
+	 * Walks the postings of a single word. The postings are only locked
+	 * while the iterator moves, and existing documents only ever move to
+	 * higher indexes when other documents are added, so an iterator stays
+	 * valid while the postings grow.
+	 */
+	public static class TermIterator extends LeafIterator {
+
+		private final String word;
+		private final Postings postings;
+		private int index;
+		private int document;
+		private PositionList positions;
+
+		/**
+		 * @param word
+		 *            word the postings belong to
+		 * @param postings
+		 *            postings to walk
+		 */
+		public TermIterator(String word, Postings postings) {
+			this.word = word;
+			this.postings = postings;
+			this.index = 0;
+			this.document = -1;
+			this.positions = null;
+		}
+
+		@Override
+		public int document() {
+			return document;
+		}
+
+		/**
+		 * Gallops through the sorted document IDs of the postings, which
+		 * jumps over runs of documents in steps that double in size.
+		 *
+		 * @see Postings#advance(int, int)
+		 */
+		@Override
+		public int advance(int target) {
+			if (document >= target) {
+				return document;
+			}
+			synchronized (postings) {
+				index = postings.advance(target, index);
+				if (index < postings.size()) {
+					document = postings.getDocument(index);
+					positions = postings.getPositions(index);
+				} else {
+					document = NO_MORE_DOCUMENTS;
+					positions = null;
+				}
+			}
+			return document;
+		}
+
+		@Override
+		public int cost() {
+			synchronized (postings) {
+				return postings.size();
+			}
+		}
+
+		/**
+		 * Returns the word the postings belong to.
+		 *
+		 * @return word of the postings
+		 */
+		@Override
+		public String getWord() {
+			return word;
+		}
+
+		@Override
+		public int getCount() {
+			return positions.size();
+		}
+
+		@Override
+		public int getFirst() {
+			return positions.first();
+		}
+
+		@Override
+		public int getDocumentFrequency(IndexStatistics statistics) {
+			return statistics.getDocumentFrequency(word);
+		}
+
+		/**
+		 * Returns the positions of the word in the current document.
+		 *
+		 * @return positions in the current document
+		 */
+		public PositionList getPositions() {
+			return positions;
+		}
+	}
+
+	/**
+	 * Walks the documents a phrase or proximity clause matches, which are
+	 * found up front since they depend on the positions of several words.
+	 */
+	public static class ClauseIterator extends LeafIterator {
+
+		private final String clause;
+		private final int[][] matches;
+		private int index;
+		private int document;
+
+		/**
+		 * @param clause
+		 *            canonical form of the clause
+		 * @param matches
+		 *            document ID, number of matches, and first position of
+		 *            every document the clause matches, in increasing order
+		 *            of document ID
+		 */
+		public ClauseIterator(String clause, List<int[]> matches) {
+			this.clause = clause;
+			this.matches = matches.toArray(new int[matches.size()][]);
+			this.index = 0;
+			this.document = -1;
+		}
+
+		@Override
+		public int document() {
+			return document;
+		}
+
+		@Override
+		public int advance(int target) {
+			if (document >= target) {
+				return document;
+			}
+			while (index < matches.length && matches[index][0] < target) {
+				index++;
+			}
+			document = index < matches.length ? matches[index][0] : NO_MORE_DOCUMENTS;
+			return document;
+		}
+
+		@Override
+		public int cost() {
+			return matches.length;
+		}
+
+		@Override
+		public String getWord() {
+			return clause;
+		}
+
+		@Override
+		public int getCount() {
+			return matches[index][1];
+		}
+
+		@Override
+		public int getFirst() {
+			return matches[index][2];
+		}
+
+		/**
+		 * Returns the number of documents the clause matches, like a search
+		 * for the clause alone.
+		 */
+		@Override
+		public int getDocumentFrequency(IndexStatistics statistics) {
+			return matches.length;
+		}
+	}
+
+	/**
+	 * Visits the documents that every required iterator visits and that no
+	 * excluded iterator visits. The rarest required iterator leads, and the
+	 * others only ever skip ahead to the documents it proposes.
+	 */
+	public static class AndIterator extends PostingsIterator {
+
+		private final PostingsIterator[] required;
+		private final PostingsIterator[] excluded;
+		private int document;
+
+		/**
+		 * @param required
+		 *            iterators that must all visit a document, at least one
+		 * @param excluded
+		 *            iterators that must not visit a document
+		 */
+		public AndIterator(List<? extends PostingsIterator> required, List<? extends PostingsIterator> excluded) {
+			this.required = required.toArray(new PostingsIterator[required.size()]);
+			this.excluded = excluded.toArray(new PostingsIterator[excluded.size()]);
+			this.document = -1;
+			Arrays.sort(this.required, BY_COST);
+		}
+
+		@Override
+		public int document() {
+			return document;
+		}
+
+		@Override
+		public int advance(int target) {
+			if (document >= target) {
+				return document;
+			}
+
+			int candidate = required[0].advance(target);
+			while (candidate != NO_MORE_DOCUMENTS) {
+				int next = candidate;
+				for (int i = 1; i < required.length && next == candidate; i++) {
+					next = required[i].advance(candidate);
+				}
+				for (int i = 0; i < excluded.length && next == candidate; i++) {
+					if (excluded[i].advance(candidate) == candidate) {
+						next = candidate + 1;
+					}
+				}
+				if (next == candidate) {
+					break;
+				}
+				candidate = required[0].advance(next);
+			}
+			document = candidate;
+			return document;
+		}
+
+		@Override
+		public int cost() {
+			return required[0].cost();
+		}
+	}
+
+	/**
+	 * Visits the documents that any of its iterators visit.
+	 */
+	public static class OrIterator extends PostingsIterator {
+
+		private final PostingsIterator[] iterators;
+		private int document;
+
+		/**
+		 * @param iterators
+		 *            iterators to combine
+		 */
+		public OrIterator(List<? extends PostingsIterator> iterators) {
+			this.iterators = iterators.toArray(new PostingsIterator[iterators.size()]);
+			this.document = -1;
+		}
+
+		@Override
+		public int document() {
+			return document;
+		}
+
+		@Override
+		public int advance(int target) {
+			if (document >= target) {
+				return document;
+			}
+
+			int next = NO_MORE_DOCUMENTS;
+			for (PostingsIterator iterator : iterators) {
+				next = Math.min(next, iterator.advance(target));
+			}
+			document = next;
+			return document;
+		}
+
+		@Override
+		public int cost() {
+			int cost = 0;
+			for (PostingsIterator iterator : iterators) {
+				cost += iterator.cost();
+			}
+			return cost;
+		}
+	}
+}
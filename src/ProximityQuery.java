@@ -0,0 +1,255 @@
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A query clause that only matches documents where its words appear close
+ * together. A phrase clause, written as words in double quotes, matches
+ * words that appear right after each other in the same order. A proximity
+ * clause, written as {@code word NEAR/k word}, matches two words that are at
+ * most k positions apart in either order.
+ *
+ * Clauses are parsed once, when their query is parsed, and passed around
+ * parsed in a {@link QueryKey}. Their canonical form, {@code "word word"} or
+ * {@code word NEAR/k word}, names them in the key of their query.
+ *
+ * @author Anthony Panisales
+ */
+public class ProximityQuery {
+
+	/** Regular expression for a proximity operator, which must be uppercase. */
+	private static final Pattern NEAR_REGEX = Pattern.compile("NEAR/(\\d+)");
+
+	private final String[] words;
+	private final int distance;
+	private final boolean phrase;
+
+	/**
+	 * Initializes a query clause.
+	 *
+	 * @param words
+	 *            words of the clause, in order
+	 * @param distance
+	 *            largest number of positions between the two words of a
+	 *            proximity clause
+	 * @param phrase
+	 *            whether the clause is a phrase
+	 */
+	private ProximityQuery(String[] words, int distance, boolean phrase) {
+		this.words = words;
+		this.distance = distance;
+		this.phrase = phrase;
+	}
+
+	/**
+	 * Returns the words of the clause.
+	 *
+	 * @return words of the clause, in order
+	 */
+	public String[] getWords() {
+		return words;
+	}
+
+	/**
+	 * Tests whether a line of a query uses phrase or proximity syntax.
+	 *
+	 * @param line
+	 *            line of a query
+	 * @return true if the line has a double quote or a NEAR/k operator
+	 */
+	public static boolean hasClauses(String line) {
+		return line.indexOf('"') >= 0 || NEAR_REGEX.matcher(line).find();
+	}
+
+	/**
+	 * Returns the distance of a proximity operator.
+	 *
+	 * @param token
+	 *            token of a query line
+	 * @return distance of the NEAR/k operator, or -1 if the token is not one
+	 */
+	public static int parseOperator(String token) {
+		Matcher matcher = NEAR_REGEX.matcher(token);
+		return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+	}
+
+	/**
+	 * Returns a phrase clause.
+	 *
+	 * @param words
+	 *            cleaned words of the phrase, at least one
+	 * @return phrase clause
+	 */
+	public static ProximityQuery phrase(String[] words) {
+		return new ProximityQuery(words, 1, true);
+	}
+
+	/**
+	 * Returns a proximity clause.
+	 *
+	 * @param first
+	 *            cleaned word before the operator
+	 * @param distance
+	 *            largest number of positions between the words
+	 * @param second
+	 *            cleaned word after the operator
+	 * @return proximity clause
+	 */
+	public static ProximityQuery near(String first, int distance, String second) {
+		return new ProximityQuery(new String[] { first, second }, distance, false);
+	}
+
+	/**
+	 * Parses a line of a query into cleaned words and clauses. Text in double
+	 * quotes becomes a phrase clause, even a single word, so a quoted word
+	 * always matches exactly. A NEAR/k operator joins the words right before
+	 * and after it into a proximity clause. A quote that is not closed runs
+	 * to the end of the line, and an operator that is not between two plain
+	 * words is ignored.
+	 *
+	 * @param line
+	 *            line of a query
+	 * @param words
+	 *            list to add the plain words to
+	 * @param clauses
+	 *            list to add the clauses to
+	 */
+	public static void parseLine(String line, List<String> words, List<ProximityQuery> clauses) {
+		boolean quoted = false;
+		for (String part : line.split("\"", -1)) {
+			if (quoted) {
+				String[] phrase = WordParser.parseWords(part);
+				if (phrase.length > 0) {
+					clauses.add(phrase(phrase));
+				}
+			} else {
+				parseWords(part, words, clauses);
+			}
+			quoted = !quoted;
+		}
+	}
+
+	/**
+	 * Parses unquoted text into cleaned words and proximity clauses.
+	 *
+	 * @param text
+	 *            text outside of quotes
+	 * @param words
+	 *            list to add the plain words to
+	 * @param clauses
+	 *            list to add the clauses to
+	 */
+	private static void parseWords(String text, List<String> words, List<ProximityQuery> clauses) {
+		int distance = -1;
+		String last = null;
+		for (String token : WordParser.split(text)) {
+			int operator = parseOperator(token);
+			if (operator >= 0) {
+				distance = last != null ? operator : -1;
+				continue;
+			}
+
+			for (String word : WordParser.parseWords(token)) {
+				if (distance >= 0) {
+					// Joins the last plain word and this one
+					words.remove(words.size() - 1);
+					clauses.add(near(last, distance, word));
+					distance = -1;
+					last = null;
+				} else {
+					words.add(word);
+					last = word;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds where the clause matches in a document.
+	 *
+	 * @param lists
+	 *            positions of each word of the clause in the document
+	 * @return number of matches and the position of the first match, or
+	 *         null if the clause does not match
+	 */
+	public int[] match(PositionList[] lists) {
+		return phrase ? matchPhrase(lists) : matchNear(lists[0], lists[1]);
+	}
+
+	/**
+	 * Finds where the words of the phrase appear right after each other.
+	 * Walks the shortest position list and gallops through the others.
+	 *
+	 * @param lists
+	 *            positions of each word of the phrase in the document
+	 * @return number of matches and the position of the first match, or
+	 *         null if the phrase does not match
+	 */
+	private int[] matchPhrase(PositionList[] lists) {
+		int shortest = 0;
+		for (int i = 1; i < lists.length; i++) {
+			if (lists[i].size() < lists[shortest].size()) {
+				shortest = i;
+			}
+		}
+
+		int count = 0;
+		int first = Integer.MAX_VALUE;
+		int[] from = new int[lists.length];
+		for (int i = 0; i < lists[shortest].size(); i++) {
+			int start = lists[shortest].get(i) - shortest;
+			boolean matches = true;
+			for (int j = 0; j < lists.length && matches; j++) {
+				if (j != shortest) {
+					from[j] = lists[j].advance(start + j, from[j]);
+					matches = from[j] < lists[j].size() && lists[j].get(from[j]) == start + j;
+				}
+			}
+			if (matches) {
+				count++;
+				first = Math.min(first, start);
+			}
+		}
+		return count == 0 ? null : new int[] { count, first };
+	}
+
+	/**
+	 * Finds where the two words appear within the distance of each other.
+	 * Walks the shorter position list and gallops through the other.
+	 *
+	 * @param a
+	 *            positions of the first word in the document
+	 * @param b
+	 *            positions of the second word in the document
+	 * @return number of matches and the position of the first match, or
+	 *         null if the words are never close enough
+	 */
+	private int[] matchNear(PositionList a, PositionList b) {
+		PositionList shorter = a.size() <= b.size() ? a : b;
+		PositionList longer = shorter == a ? b : a;
+
+		int count = 0;
+		int first = Integer.MAX_VALUE;
+		int from = 0;
+		for (int i = 0; i < shorter.size(); i++) {
+			int position = shorter.get(i);
+			from = longer.advance(position - distance, from);
+			if (from < longer.size() && longer.get(from) <= position + distance) {
+				count++;
+				first = Math.min(first, Math.min(position, longer.get(from)));
+			}
+		}
+		return count == 0 ? null : new int[] { count, first };
+	}
+
+	/**
+	 * Returns the canonical form of the clause, {@code "word word"} for a
+	 * phrase or {@code word NEAR/k word} for a proximity clause.
+	 *
+	 * @return canonical form of the clause
+	 */
+	@Override
+	public String toString() {
+		return phrase ? "\"" + String.join(" ", words) + "\"" : words[0] + " NEAR/" + distance + " " + words[1];
+	}
+}
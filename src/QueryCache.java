@@ -0,0 +1,248 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the best search results of recent searches, so a popular query is
+ * only searched for once until the index changes. The least recently used
+ * searches are evicted once the cache holds too many searches or its
+ * estimated size grows too large.
+ *
+ * Every entry remembers the version of the index it was computed from. An
+ * entry whose index has changed since is never returned, so adding a seed or
+ * changing the scorer invalidates the cached searches of that index without
+ * the index having to know about the cache.
+ *
+ * Entries are keyed by the identity of the search results of an index rather
+ * than by the index, so the cache never keeps an index reachable after it is
+ * no longer used, and indexes that only search the same base index share
+ * their entries.
+ *
+ * @see SegmentedIndex#getCacheIdentity()
+ *
+ * @author Anthony Panisales
+ */
+public class QueryCache {
+
+	/** The default number of searches to keep. */
+	public static final int DEFAULT_ENTRIES = 1000;
+
+	/** The default estimated size of the cache, in bytes. */
+	public static final long DEFAULT_BYTES = 16 * 1024 * 1024;
+
+	/** Estimated size of an entry without its query or results, in bytes. */
+	private static final int ENTRY_BYTES = 64;
+
+	/** Estimated size of a cached search result, in bytes. */
+	private static final int RESULT_BYTES = 56;
+
+	/** Searches ordered from least to most recently used. */
+	private final LinkedHashMap<Key, Entry> entries;
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private long bytes;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * Initializes a cache with the default limits.
+	 *
+	 * @see #QueryCache(int, long)
+	 */
+	public QueryCache() {
+		this(DEFAULT_ENTRIES, DEFAULT_BYTES);
+	}
+
+	/**
+	 * Initializes a cache.
+	 *
+	 * @param maxEntries
+	 *            largest number of searches to keep
+	 * @param maxBytes
+	 *            largest estimated size of the cache, in bytes
+	 */
+	public QueryCache(int maxEntries, long maxBytes) {
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.bytes = 0;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * Returns the best search results of a query, searching the index only
+	 * if the results are not cached for the current version of the index.
+	 * Queries with the same words in any order share their results. Results
+	 * are only cached if the index did not change during the search, since
+	 * they may otherwise belong to neither version of the index.
+	 *
+	 * @param index
+	 *            index to search
+	 * @param query
+	 *            parsed query to be searched for
+	 * @param exact
+	 *            whether to do an exact search or a partial search
+	 * @param limit
+	 *            largest number of search results to return
+	 * @return best search results and the number of matches
+	 * @throws InterruptedException
+	 */
+	public TopResults search(SegmentedIndex index, QueryKey query, boolean exact, int limit)
+			throws InterruptedException {
+		// Read before searching, so a change during the search is never missed
+		Object identity = index.getCacheIdentity();
+		long version = index.getVersion();
+		Key key = new Key(identity, query, exact, limit);
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.version == version) {
+				hits.incrementAndGet();
+				return entry.results;
+			}
+		}
+		misses.incrementAndGet();
+
+		TopResults results = exact ? index.exactSearch(query, limit) : index.partialSearch(query, limit);
+		if (index.getCacheIdentity() == identity && index.getVersion() == version) {
+			put(key, new Entry(results, version));
+		}
+		return results;
+	}
+
+	/**
+	 * Adds an entry to the cache, replacing any older entry for the same
+	 * search, and evicts the least recently used entries that do not fit.
+	 *
+	 * @param key
+	 *            search the results belong to
+	 * @param entry
+	 *            results of the search
+	 */
+	private synchronized void put(Key key, Entry entry) {
+		Entry old = entries.get(key);
+		if (old != null && old.version > entry.version) {
+			return;
+		}
+		if (old != null) {
+			bytes -= old.bytes(key);
+		}
+		entries.put(key, entry);
+		bytes += entry.bytes(key);
+
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+			Map.Entry<Key, Entry> eldest = iterator.next();
+			bytes -= eldest.getValue().bytes(eldest.getKey());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Removes every entry from the cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of searches in the cache.
+	 *
+	 * @return number of cached searches
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of searches that were answered from the cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of searches that had to search the index.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the fraction of searches that were answered from the cache.
+	 *
+	 * @return hit rate between 0 and 1, or 0 if there were no searches
+	 */
+	public double getHitRate() {
+		long hits = this.hits.get();
+		long total = hits + misses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Identifies a search by the identity of the search results of its index,
+	 * its query, whether it is exact, and its limit. Identities are compared
+	 * by reference.
+	 */
+	private static class Key {
+
+		private final Object identity;
+		private final QueryKey query;
+		private final boolean exact;
+		private final int limit;
+		private final int hash;
+
+		public Key(Object identity, QueryKey query, boolean exact, int limit) {
+			this.identity = identity;
+			this.query = query;
+			this.exact = exact;
+			this.limit = limit;
+			this.hash = 31 * (31 * (31 * System.identityHashCode(identity) + query.hashCode()) + (exact ? 1 : 0))
+					+ limit;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return identity == key.identity && exact == key.exact && limit == key.limit && query.equals(key.query);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Holds the results of a search and the version of the index they were
+	 * computed from.
+	 */
+	private static class Entry {
+
+		private final TopResults results;
+		private final long version;
+
+		public Entry(TopResults results, long version) {
+			this.results = results;
+			this.version = version;
+		}
+
+		/**
+		 * @return estimated size of the entry and its key, in bytes
+		 */
+		private long bytes(Key key) {
+			return ENTRY_BYTES + 2L * key.query.toString().length() + (long) RESULT_BYTES * results.getResults().size();
+		}
+	}
+}
@@ -8,12 +8,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 
 /**
@@ -28,30 +33,51 @@ public class QueryHelper {
 	 * 
 	 * @author Anthony Panisales
 	 */
-	public class SearchResult implements Comparable<SearchResult> {
+	public static class SearchResult implements Comparable<SearchResult> {
 		
+		private final int document;
+		private final DocumentTable documents;
 		private String where;
 		private int count;
 		private int firstPos;
+		private double score;
 
 		/**
 		 * Initializes the search result.
 		 * 
-		 * @param w
-		 *         filepath where occurrences are located
+		 * @param document
+		 *         ID of the document where occurrences are located
+		 * @param documents
+		 *         document table used to resolve the ID to a filepath
 		 */
-		public SearchResult(String w) {
-			where = w;
+		public SearchResult(int document, DocumentTable documents) {
+			this.document = document;
+			this.documents = documents;
+			where = null;
 			count = 0;
 	 		firstPos = Integer.MAX_VALUE;
+	 		score = 0;
 		}
 
 		/**
-		 * Returns the filepath where occurences are located
+		 * Returns the ID of the document where occurrences are located
+		 * 
+		 * @return ID of the document
+		 */
+		public int getDocument() {
+			return document;
+		}
+
+		/**
+		 * Returns the filepath where occurences are located. The path is
+		 * only looked up from the document table the first time it is needed.
 		 * 
 		 * @return path where occurrences are located as String
 		 */
 		public String getWhere() {
+			if (where == null) {
+				where = documents.getPath(document);
+			}
 			return where;
 		}
 
@@ -73,6 +99,17 @@ public class QueryHelper {
 			return firstPos;
 		}
 
+		/**
+		 * Returns the relevance score
+		 *
+		 * @return relevance score
+		 * 
+		 * @see Scorer
+		 */
+		public double getScore() {
+			return score;
+		}
+
 		/**
 		 * Sets the number of occurrences
 		 * 
@@ -93,8 +130,20 @@ public class QueryHelper {
 			firstPos = newfp;
 		}
 
+		/**
+		 * Sets the relevance score
+		 * 
+		 * @param newScore
+		 *            new relevance score
+		 */
+		public void setScore(double newScore) {
+			score = newScore;
+		}
+
 		/**
 		 * Contains the criteria to sort search results. Locations 
+		 * with a higher relevance score should be ranked above others.
+		 * For locations with the same score, locations
 		 * where the query word(s) are more frequent should be ranked 
 		 * above others. For locations that have the same frequency of 
 		 * query word(s), locations where the words appear in earlier 
@@ -109,6 +158,11 @@ public class QueryHelper {
 		 */
 		@Override 
 		public int compareTo(SearchResult other) {
+			int scores = Double.compare(other.getScore(), this.score);
+			if (scores != 0) {
+				return scores;
+			}
+			
 			if (this.count < other.getCount()) {
 				return 1;
 			} else if (this.count > other.getCount()) {
@@ -121,7 +175,7 @@ public class QueryHelper {
 				return 1;
 			}
 			
-			return this.where.toLowerCase().compareTo(other.getWhere().toLowerCase());
+			return this.getWhere().toLowerCase().compareTo(other.getWhere().toLowerCase());
 		}
 	}
 	
@@ -189,75 +243,91 @@ public class QueryHelper {
 
 		/**
 		 * Writes search queries and their results as a JSON object to the path using UTF8.
+		 * Queries are written in the order of their canonical form, and empty
+		 * queries are left out.
 		 *
 		 * @param queryResults
-		 *            HashMap containing search queries and their results to write as a JSON object
+		 *            map containing search queries and their results to write as a JSON object
 		 * @param path
 		 *            path to write file
 		 * @throws IOException
 		 */
-		public void asObject(HashMap<String[], List<SearchResult>> queryResults, Path path) throws IOException {
-			int index = 0;
-			TreeSet<String[]> queries = new TreeSet<String[]>(new Comparator<String[]>() {
-				@Override
-				public int compare(String[] a, String[] b) {
-					String aString = Arrays.toString(a);
-					String bString = Arrays.toString(b);
-					aString = aString.substring(1, aString.length()-1).replaceAll(",","");
-					bString = bString.substring(1, bString.length()-1).replaceAll(",","");
-					if (a.length < b.length) {
-						if (aString.equals(bString.substring(0, a.length))) {
-							return -1;
-						}
-					} else if (a.length > b.length) {
-						if (bString.equals(aString.substring(0, b.length))) {
-							return 1;
-						}
-					}
-					return aString.compareTo(bString);
+		public void asObject(Map<QueryKey, List<SearchResult>> queryResults, Path path) throws IOException {
+			List<QueryKey> queries = new ArrayList<QueryKey>(queryResults.size());
+			for (QueryKey query : queryResults.keySet()) {
+				if (!query.isEmpty()) {
+					queries.add(query);
 				}
-			});
+			}
+			Collections.sort(queries);
 			
 			try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
 				writer.write("[\n");
-				for (String[] query : queryResults.keySet()) {
-					Arrays.sort(query);
-					queries.add(query);
-				}
-				for (String[] query : queries) {
-					String queryString = Arrays.toString(query);
-					queryString = queryString.substring(1, queryString.length()-1).replaceAll(",","");
-					if (queryString.equals("")) {
-						index++;
-						continue;
-					}
-					writer.write(indent(1) + "{\n");
-					writer.write(indent(2) + quote("queries") + ": " + quote(queryString) + ",\n");
-					writer.write(indent(2) + quote("results") + ": ");
-					asArray(writer, queryResults.get(query), 2);
-					if (index != queries.size()-1) {
-						writer.write(indent(1) + "},\n");
-					} else {
-						writer.write(indent(1) + "}\n");
-					}
+				int index = 0;
+				for (QueryKey query : queries) {
+					asQuery(writer, query, queryResults.get(query), index == queries.size()-1);
 					index++;
 				}
 				writer.write("]");
 				writer.flush();
 			}
 		}
+
+		/**
+		 * Writes a search query and its results as a member of the JSON array
+		 * of every query.
+		 *
+		 * @param writer
+		 *            writer to use for output
+		 * @param query
+		 *            search query to write
+		 * @param results
+		 *            list of search results of the query
+		 * @param last
+		 *            whether the query is the last member of the array
+		 * @throws IOException
+		 */
+		public void asQuery(Writer writer, QueryKey query, List<SearchResult> results, boolean last) throws IOException {
+			writer.write(indent(1) + "{\n");
+			writer.write(indent(2) + quote("queries") + ": " + quote(query.toString().replace("\"", "\\\"")) + ",\n");
+			writer.write(indent(2) + quote("results") + ": ");
+			asArray(writer, results, 2);
+			if (!last) {
+				writer.write(indent(1) + "},\n");
+			} else {
+				writer.write(indent(1) + "}\n");
+			}
+		}
 	}
 	
-	private List<String[]> queries;
-	private HashMap<String[],List<SearchResult>> queryResults;
+	/** Number of searches per worker thread that may be in flight while streaming results. */
+	private static final int STREAM_WINDOW = 4;
+	
+	/** Distinct queries of the query file, in the order they were first read. */
+	private Set<QueryKey> queries;
+	private ConcurrentHashMap<QueryKey,List<SearchResult>> queryResults;
+	private final int limit;
 	
 	public QueryHelper() {
-		queries = new ArrayList<String[]>();
-		queryResults = new HashMap<String[],List<SearchResult>>();
+		this(Integer.MAX_VALUE);
 	}
 	
 	/**
-	 * Parses the search query file line by line
+	 * Initializes a query helper that only keeps the best search results of
+	 * each query.
+	 * 
+	 * @param limit
+	 *            largest number of search results to keep for each query
+	 */
+	public QueryHelper(int limit) {
+		queries = new LinkedHashSet<QueryKey>();
+		queryResults = new ConcurrentHashMap<QueryKey,List<SearchResult>>();
+		this.limit = limit;
+	}
+	
+	/**
+	 * Parses the search query file line by line. Lines with the same words
+	 * are only kept once.
 	 * 
 	 * @param searchInput
 	 *                 path of search query file
@@ -267,11 +337,35 @@ public class QueryHelper {
 		File queryFile = new File(searchInput.toString());
 		Scanner filescan = new Scanner(queryFile);
 		while (filescan.hasNextLine()) {
-			queries.add(WordParser.parseWords(filescan.nextLine()));
+			queries.add(parseQuery(filescan.nextLine()));
 		}
 		filescan.close();
 	}
 	
+	/**
+	 * Parses a line of a query into cleaned words. Lines with AND, OR, or NOT
+	 * operators are parsed into a single boolean query, and lines with double
+	 * quotes or NEAR/k operators are parsed into phrase and proximity clauses.
+	 * 
+	 * @param line
+	 *            line of a query
+	 * @return parsed query
+	 * 
+	 * @see BooleanQuery#parse(String)
+	 * @see ProximityQuery#parseLine(String, List, List)
+	 */
+	public static QueryKey parseQuery(String line) {
+		if (BooleanQuery.hasOperators(line)) {
+			return new QueryKey(new String[0], Collections.<ProximityQuery>emptyList(), BooleanQuery.parse(line));
+		} else if (ProximityQuery.hasClauses(line)) {
+			List<String> words = new ArrayList<String>();
+			List<ProximityQuery> clauses = new ArrayList<ProximityQuery>();
+			ProximityQuery.parseLine(line, words, clauses);
+			return new QueryKey(words.toArray(new String[words.size()]), clauses, null);
+		}
+		return new QueryKey(WordParser.parseWords(line));
+	}
+	
 	/**
 	 * Returns exact search results from the inverted index, such that any 
 	 * word in the inverted index that exactly matches a query word is taken
@@ -282,9 +376,7 @@ public class QueryHelper {
 	 * @throws InterruptedException 
 	 */
 	public void exactSearch(InvertedIndex index) throws InterruptedException {
-		for (String[] query : queries) {
-			queryResults.put(query, index.exactSearch(query));
-		}
+		batchSearch(index, true, null);
 	}
 	
 	/**
@@ -297,8 +389,28 @@ public class QueryHelper {
 	 * @throws InterruptedException 
 	 */
 	public void partialSearch(InvertedIndex index) throws InterruptedException {
-		for (String[] query : queries) {
-			queryResults.put(query, index.partialSearch(query));
+		batchSearch(index, false, null);
+	}
+	
+	/**
+	 * Searches for every query as one batch, which only searches for queries
+	 * with the same words once and shares the postings of each word between
+	 * every query that needs them.
+	 * 
+	 * @param index
+	 *            the inverted index to search
+	 * @param exact
+	 *            indicates whether to perform an exact search or not
+	 * @param queue
+	 *            work queue to search with, or null to search with the
+	 *            current thread
+	 * @throws InterruptedException
+	 * 
+	 * @see InvertedIndex#batchSearch(java.util.Collection, boolean, int, WorkQueue)
+	 */
+	public void batchSearch(InvertedIndex index, boolean exact, WorkQueue queue) throws InterruptedException {
+		for (Map.Entry<QueryKey, TopResults> entry : index.batchSearch(queries, exact, limit, queue).entrySet()) {
+			queryResults.put(entry.getKey(), entry.getValue().getResults());
 		}
 	}
 	
@@ -316,71 +428,110 @@ public class QueryHelper {
 	
 	
 	/**
-	 * Returns a map containing mappings of a search query and its results.
+	 * Searches for every query of a query file and writes the results to a
+	 * file as they are found, without keeping the results of every query in
+	 * memory. The query file is read once to find the distinct queries in
+	 * sorted order, and then at most a small window of searches is in flight
+	 * at once. The results of the oldest search in the window are written as
+	 * soon as it finishes, so the output is the same as
+	 * {@link #resultsAsObject(Path)}.
 	 * 
-	 * @return HashMap of search queries and their results
+	 * @param searchInput
+	 *            path of search query file
+	 * @param searchOutput
+	 *            path to write the results to
+	 * @param index
+	 *            the inverted index to search
+	 * @param exact
+	 *            indicates whether to perform an exact search or not
+	 * @param queue
+	 *            work queue to search with, or null to search with the
+	 *            current thread
+	 * @throws IOException
+	 * @throws InterruptedException
 	 */
-	public HashMap<String[],List<SearchResult>> getQueryResults() {
-		return queryResults;
+	public void streamResults(Path searchInput, Path searchOutput, InvertedIndex index, boolean exact,
+			WorkQueue queue) throws IOException, InterruptedException {
+		TreeSet<QueryKey> sorted = new TreeSet<QueryKey>();
+		try (Scanner filescan = new Scanner(new File(searchInput.toString()))) {
+			while (filescan.hasNextLine()) {
+				QueryKey query = parseQuery(filescan.nextLine());
+				if (!query.isEmpty()) {
+					sorted.add(query);
+				}
+			}
+		}
+		
+		int window = queue == null ? 1 : queue.size() * STREAM_WINDOW;
+		Iterator<QueryKey> pending = sorted.iterator();
+		LinkedList<StreamTask> inFlight = new LinkedList<StreamTask>();
+		QueryResultsJSONWriter json = new QueryResultsJSONWriter();
+		
+		Files.createFile(searchOutput);
+		try (BufferedWriter writer = Files.newBufferedWriter(searchOutput, StandardCharsets.UTF_8);) {
+			writer.write("[\n");
+			while (pending.hasNext() || !inFlight.isEmpty()) {
+				while (inFlight.size() < window && pending.hasNext()) {
+					StreamTask task = new StreamTask(pending.next(), exact, limit, index);
+					inFlight.addLast(task);
+					if (queue == null) {
+						task.run();
+					} else {
+						queue.execute(task);
+					}
+				}
+				
+				StreamTask task = inFlight.removeFirst();
+				task.done.await();
+				json.asQuery(writer, task.query, task.results, !pending.hasNext() && inFlight.isEmpty());
+			}
+			writer.write("]");
+			writer.flush();
+		}
 	}
 	
 	/**
-	 * Fills a work queue with searching tasks to execute.
+	 * Returns a map containing mappings of a search query and its results.
 	 * 
-	 * @param queue
-	 *            work queue to fill
-	 * @param exact
-	 *            indicates whether to perform an exact search or not
-	 * @param queryResults
-	 *            a map that is going to be filled by the threads and will contain
-	 *            mappings of a search query and its results
-	 * @param index
-	 *            an inverted index that is going to be searched through by the threads
+	 * @return map of search queries and their results
 	 */
-	public void threadsSearch(WorkQueue queue, boolean exact, 
-			HashMap<String[],List<SearchResult>> queryResults, InvertedIndex index) {
-		for (String[] query : queries) {
-			queue.execute(new QueryTask(query, exact, queryResults, index));
-		}
+	public ConcurrentHashMap<QueryKey,List<SearchResult>> getQueryResults() {
+		return queryResults;
 	}
 	
 	/**
-	 * Runnable task that performs an exact or partial search on an inverted index 
-	 * using a single, multiple word query.
+	 * Runnable task that searches for a single query of a streamed query file
+	 * and signals when its results are ready to be written.
 	 */
-	private static class QueryTask implements Runnable {
-		private final String[] query;
+	private static class StreamTask implements Runnable {
+		private final QueryKey query;
 		private final boolean exact;
-		private final HashMap<String[],List<SearchResult>> localQueryResults;
-		private final HashMap<String[],List<SearchResult>> globalQueryResults;
+		private final int limit;
 		private final InvertedIndex index;
+		private final CountDownLatch done;
+		private List<SearchResult> results;
 		
-		public QueryTask(String[] query, boolean exact, 
-				HashMap<String[],List<SearchResult>> globalQueryResults, InvertedIndex index) {
+		public StreamTask(QueryKey query, boolean exact, int limit, InvertedIndex index) {
 			this.query = query;
 			this.exact = exact;
-			this.localQueryResults = new HashMap<String[],List<SearchResult>>();
-			this.globalQueryResults = globalQueryResults;
+			this.limit = limit;
 			this.index = index;
+			this.done = new CountDownLatch(1);
+			this.results = Collections.emptyList();
 		}
 
 		@Override
 		public void run() {
 			try {
 				if (exact) {
-					localQueryResults.put(query, index.exactSearch(query));
+					results = index.exactSearch(query, limit).getResults();
 				} else {
-					localQueryResults.put(query, index.partialSearch(query));
+					results = index.partialSearch(query, limit).getResults();
 				}
-					
 			} catch (InterruptedException e) {
 				e.printStackTrace();
-			}
-			
-			synchronized(globalQueryResults) {
-				for (Entry<String[],List<SearchResult>> entry : localQueryResults.entrySet()) {
-					globalQueryResults.put(entry.getKey(), entry.getValue());
-				}
+			} finally {
+				done.countDown();
 			}
 		}
 	}
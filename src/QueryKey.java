@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Identifies a query by its words, in any order. A query is parsed once into
+ * plain words, phrase and proximity clauses, and a boolean query, which are
+ * all kept in the key so searches never parse the query again. The words are
+ * sorted once when the key is created, and the canonical form of the query
+ * and its hash are computed right away, so keys are cheap to hash, compare,
+ * and sort. Keys are immutable and can be shared between threads.
+ *
+ * @author Anthony Panisales
+ */
+public class QueryKey implements Comparable<QueryKey> {
+
+	private final String[] words;
+	private final List<ProximityQuery> clauses;
+	private final BooleanQuery query;
+	private final String canonical;
+	private final int hash;
+
+	/**
+	 * Initializes a query key for a query of plain words only.
+	 *
+	 * @param words
+	 *            array of cleaned words of the query
+	 */
+	public QueryKey(String[] words) {
+		this(words, Collections.<ProximityQuery>emptyList(), null);
+	}
+
+	/**
+	 * Initializes a query key.
+	 *
+	 * @param words
+	 *            array of cleaned plain words of the query
+	 * @param clauses
+	 *            phrase and proximity clauses of the query
+	 * @param query
+	 *            boolean query, or null if the query has none
+	 */
+	public QueryKey(String[] words, List<ProximityQuery> clauses, BooleanQuery query) {
+		this.words = words.clone();
+		Arrays.sort(this.words);
+		this.clauses = Collections.unmodifiableList(new ArrayList<ProximityQuery>(clauses));
+		this.query = query;
+
+		List<String> parts = new ArrayList<String>(Arrays.asList(this.words));
+		for (ProximityQuery clause : clauses) {
+			parts.add(clause.toString());
+		}
+		if (query != null) {
+			parts.add(query.toString());
+		}
+		Collections.sort(parts);
+		this.canonical = String.join(" ", parts);
+		this.hash = canonical.hashCode();
+	}
+
+	/**
+	 * Returns the plain words of the query.
+	 *
+	 * @return sorted array of words
+	 */
+	public String[] getWords() {
+		return words.clone();
+	}
+
+	/**
+	 * Returns the phrase and proximity clauses of the query.
+	 *
+	 * @return unmodifiable list of clauses
+	 */
+	public List<ProximityQuery> getClauses() {
+		return clauses;
+	}
+
+	/**
+	 * Returns the boolean query of the query.
+	 *
+	 * @return boolean query, or null if the query has none
+	 */
+	public BooleanQuery getBooleanQuery() {
+		return query;
+	}
+
+	/**
+	 * Tests whether the query has no words.
+	 *
+	 * @return true if the query is empty
+	 */
+	public boolean isEmpty() {
+		return words.length == 0 && clauses.isEmpty() && query == null;
+	}
+
+	/**
+	 * Returns the canonical form of the query, the sorted words, clauses and
+	 * boolean query joined by spaces, which is the same for every query with
+	 * the same words.
+	 *
+	 * @return canonical form of the query
+	 */
+	@Override
+	public String toString() {
+		return canonical;
+	}
+
+	/**
+	 * Sorts queries by their canonical form.
+	 */
+	@Override
+	public int compareTo(QueryKey other) {
+		return canonical.compareTo(other.canonical);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof QueryKey && hash == ((QueryKey) other).hash
+				&& canonical.equals(((QueryKey) other).canonical);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
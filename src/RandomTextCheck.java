@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Runs a check on random texts, and optionally on the files of a directory,
+ * then prints how many texts were checked and how many failed, and exits
+ * with status 1 if any did. Texts are random joins of pieces chosen by each
+ * check to be hard to handle. Only the first failures are described, with
+ * every character that is not printable ASCII escaped. Every check takes
+ * the same arguments:
+ *
+ * <pre>
+ * [-path path] [-texts num] [-seed num]
+ * </pre>
+ *
+ * @author Anthony Panisales
+ */
+public abstract class RandomTextCheck {
+
+	/** Number of failures to describe before only counting them. */
+	private static final int MAX_REPORTED = 10;
+
+	/** Pieces random texts are joined from. */
+	private final String[] pieces;
+
+	/** Largest number of pieces in a random text. */
+	private final int maxPieces;
+
+	private int checked;
+	private int failures;
+
+	/**
+	 * @param pieces
+	 *            pieces random texts are joined from
+	 * @param maxPieces
+	 *            largest number of pieces in a random text
+	 */
+	protected RandomTextCheck(String[] pieces, int maxPieces) {
+		this.pieces = pieces;
+		this.maxPieces = maxPieces;
+		this.checked = 0;
+		this.failures = 0;
+	}
+
+	/**
+	 * Checks the random texts and the files given by the arguments, and
+	 * prints the totals.
+	 *
+	 * @param args
+	 *            command-line arguments
+	 * @throws IOException
+	 *             if a file cannot be read
+	 */
+	protected void run(String[] args) throws IOException {
+		ArgumentMap argMap = new ArgumentMap(args);
+		int texts = Math.max(argMap.getInteger("-texts", 200000), 0);
+		Random random = new Random(argMap.getInteger("-seed", 42));
+
+		for (int i = 0; i < texts; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = 1 + random.nextInt(maxPieces);
+			for (int j = 0; j < length; j++) {
+				text.append(pieces[random.nextInt(pieces.length)]);
+			}
+			checked++;
+			check(text.toString(), random);
+		}
+
+		if (argMap.hasValue("-path")) {
+			Path path = Paths.get(argMap.getString("-path")).normalize();
+			if (Files.notExists(path)) {
+				System.out.println("Path does not exist: " + path);
+				return;
+			}
+			checkFiles(path, random);
+		}
+
+		System.out.printf("Checked %d texts, %d differ%n", checked, failures);
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Checks the text of a file, or of every file under a directory.
+	 */
+	private void checkFiles(Path path, Random random) throws IOException {
+		if (Files.isDirectory(path)) {
+			try (DirectoryStream<Path> listing = Files.newDirectoryStream(path)) {
+				for (Path file : listing) {
+					checkFiles(file, random);
+				}
+			}
+		} else {
+			checked++;
+			check(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), random);
+		}
+	}
+
+	/**
+	 * Checks a single text, reporting every way it fails.
+	 *
+	 * @param text
+	 *            text to check
+	 * @param random
+	 *            random numbers for the check to use
+	 * @throws IOException
+	 *             if the check cannot write the text
+	 */
+	protected abstract void check(String text, Random random) throws IOException;
+
+	/**
+	 * Counts a failure, and describes it unless enough failures were already
+	 * described.
+	 *
+	 * @param name
+	 *            name of what failed
+	 * @param text
+	 *            text it failed on
+	 * @param expected
+	 *            expected result
+	 * @param found
+	 *            result found instead
+	 */
+	protected void fail(String name, String text, String expected, String found) {
+		if (failures < MAX_REPORTED) {
+			System.out.printf("%s differs on %s:%n  expected %s%n  found    %s%n", name, escape(text),
+					escape(expected), escape(found));
+		}
+		failures++;
+	}
+
+	/**
+	 * Escapes the characters of a text that are not printable ASCII.
+	 */
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x20 || c > 0x7e) {
+				escaped.append(String.format("\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Scores how relevant a document is to a single query word. The score of a
+ * search result is the sum of the scores of every query word found in its
+ * document. All of the statistics a scorer needs are kept up to date while
+ * documents are added to an inverted index, so scoring never needs an extra
+ * pass over the postings.
+ *
+ * @author Anthony Panisales
+ */
+public interface Scorer {
+
+	/**
+	 * Okapi BM25, which favors rare words and does not let long documents
+	 * win just by repeating a word many times.
+	 */
+	public static final Scorer BM25 = new Scorer() {
+
+		/** How quickly repeating a word stops raising the score. */
+		private static final double K1 = 1.2;
+
+		/** How much the length of a document lowers its score. */
+		private static final double B = 0.75;
+
+		@Override
+		public double score(int frequency, int documentFrequency, int length, int documents, double averageLength) {
+			double idf = Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+			double norm = averageLength > 0 ? length / averageLength : 1;
+			return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * norm));
+		}
+	};
+
+	/**
+	 * Term frequency times inverse document frequency, with the term
+	 * frequency damped by a logarithm.
+	 */
+	public static final Scorer TFIDF = new Scorer() {
+		@Override
+		public double score(int frequency, int documentFrequency, int length, int documents, double averageLength) {
+			return (1 + Math.log(frequency)) * Math.log(1 + (double) documents / documentFrequency);
+		}
+	};
+
+	/**
+	 * The number of times the word appears in the document, which ranks
+	 * search results by count, then by first position, then by path.
+	 */
+	public static final Scorer COUNT = new Scorer() {
+		@Override
+		public double score(int frequency, int documentFrequency, int length, int documents, double averageLength) {
+			return frequency;
+		}
+	};
+
+	/**
+	 * Returns the score of a word in a document.
+	 *
+	 * @param frequency
+	 *            number of times the word appears in the document
+	 * @param documentFrequency
+	 *            number of documents the word appears in
+	 * @param length
+	 *            number of words in the document
+	 * @param documents
+	 *            number of documents in the index
+	 * @param averageLength
+	 *            average number of words in a document of the index
+	 * @return score of the word in the document
+	 */
+	public double score(int frequency, int documentFrequency, int length, int documents, double averageLength);
+
+	/**
+	 * Returns the scorer with the given name, ignoring case.
+	 *
+	 * @param name
+	 *            "bm25", "tfidf", or "count"
+	 * @return scorer with the name, or null if there is none
+	 */
+	public static Scorer forName(String name) {
+		if (name == null) {
+			return null;
+		}
+		switch (name.toLowerCase()) {
+		case "bm25":
+			return BM25;
+		case "tfidf":
+			return TFIDF;
+		case "count":
+			return COUNT;
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,511 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches a list of immutable inverted index segments as if they were one
+ * index. Each newly crawled index becomes its own segment, which can be
+ * searched as soon as it is added, so no large index ever has to be locked
+ * to merge new documents into it. If a document is in more than one segment,
+ * the version in the newest segment is used. The older versions are found
+ * once when a segment is added or merged, so search results are skipped by
+ * their document ID without looking up their paths.
+ *
+ * Small segments are merged into larger ones in the background. A merge
+ * builds a new segment from a run of neighboring segments and then swaps it
+ * in for the run, so searches are never blocked by a merge. The oldest
+ * segment is a pinned base that is never merged, so one large shared index
+ * can be the base of many segmented indexes without being copied.
+ *
+ * @author Anthony Panisales
+ */
+public class SegmentedIndex {
+
+	/** Number of segments of the same size tier that are merged together. */
+	private static final int MERGE_FACTOR = 4;
+
+	/**
+	 * Segments ordered from newest to oldest. The list itself is never
+	 * modified, but replaced by a new list whenever a segment is added or a
+	 * merge finishes, so searches can read it without locking.
+	 */
+	private volatile List<Segment> segments;
+
+	private final WorkQueue mergeQueue;
+	private boolean merging;
+	private volatile long lastAccess;
+	private volatile Scorer scorer;
+
+	/** Counts the segments added, the merges and the scorers set since the index was created. */
+	private final AtomicLong changes;
+
+	/** Identifies the index in a query cache without keeping the index reachable. */
+	private final Object token;
+
+	/**
+	 * Initializes a segmented index with a pinned base segment.
+	 *
+	 * @param base
+	 *            oldest segment, which will never be modified or merged
+	 * @param mergeQueue
+	 *            work queue used to merge segments in the background
+	 */
+	public SegmentedIndex(InvertedIndex base, WorkQueue mergeQueue) {
+		this.segments = Collections.singletonList(new Segment(base));
+		this.mergeQueue = mergeQueue;
+		this.merging = false;
+		this.lastAccess = System.currentTimeMillis();
+		this.scorer = base.getScorer();
+		this.changes = new AtomicLong();
+		this.token = new Object();
+	}
+
+	/**
+	 * Sets the scorer used to rank search results from every segment. The
+	 * scorer of the base segment is used unless another scorer is set.
+	 *
+	 * @param scorer
+	 *            scorer used to rank search results
+	 */
+	public void setScorer(Scorer scorer) {
+		this.scorer = scorer;
+		changes.incrementAndGet();
+	}
+
+	/**
+	 * Returns the version of the segmented index, which changes every time
+	 * a segment is added, segments are merged, the scorer is changed, or the
+	 * base segment changes. A merge does not change which documents can be
+	 * found, but it drops the older versions of documents from the collection
+	 * statistics, which changes the scores of search results. While the index
+	 * has the same search results as its base segment, its version is the
+	 * version of the base segment.
+	 *
+	 * @return version of the segmented index
+	 *
+	 * @see QueryCache
+	 * @see #getCacheIdentity()
+	 */
+	public long getVersion() {
+		List<Segment> segments = this.segments;
+		InvertedIndex base = segments.get(segments.size() - 1).index;
+		return isShared(segments) ? base.getVersion() : changes.get() + base.getVersion();
+	}
+
+	/**
+	 * Returns what identifies the search results of the index in a query
+	 * cache. While the index has no segment but its base segment and ranks
+	 * with the scorer of its base segment, its search results are the same
+	 * as those of the base segment, so the base segment identifies them and
+	 * every such index shares them. Otherwise a token of this index
+	 * identifies them, which does not keep the index reachable once it is no
+	 * longer used.
+	 *
+	 * @return identity of the search results of the index
+	 *
+	 * @see QueryCache
+	 */
+	public Object getCacheIdentity() {
+		List<Segment> segments = this.segments;
+		return isShared(segments) ? segments.get(0).index : token;
+	}
+
+	/**
+	 * Tests whether the index has the same search results as its base
+	 * segment.
+	 */
+	private boolean isShared(List<Segment> segments) {
+		return segments.size() == 1 && scorer == segments.get(0).index.getScorer();
+	}
+
+	/**
+	 * Adds an inverted index as the newest segment. The index must not be
+	 * modified afterwards.
+	 *
+	 * @param index
+	 *            index to add as a segment
+	 */
+	public void addSegment(InvertedIndex index) {
+		touch();
+		if (index.getDocumentCount() == 0) {
+			return;
+		}
+		synchronized (this) {
+			List<InvertedIndex> newer = Collections.singletonList(index);
+			List<Segment> newSegments = new ArrayList<Segment>(segments.size() + 1);
+			newSegments.add(new Segment(index));
+			for (Segment segment : segments) {
+				newSegments.add(segment.shadowedBy(newer));
+			}
+			segments = Collections.unmodifiableList(newSegments);
+			changes.incrementAndGet();
+			scheduleMerge();
+		}
+	}
+
+	/**
+	 * Returns the number of segments.
+	 *
+	 * @return number of segments
+	 */
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Returns exact search results from every segment.
+	 *
+	 * @param query
+	 *            array of words to be searched for
+	 * @return list of sorted search results
+	 * @throws InterruptedException
+	 *
+	 * @see InvertedIndex#exactSearch(String[])
+	 */
+	public List<QueryHelper.SearchResult> exactSearch(String[] query) throws InterruptedException {
+		return exactSearch(new QueryKey(query), Integer.MAX_VALUE).getResults();
+	}
+
+	/**
+	 * Returns the best exact search results from every segment, along with
+	 * the number of documents that matched.
+	 *
+	 * @param query
+	 *            parsed query to be searched for
+	 * @param limit
+	 *            largest number of search results to return
+	 * @return best search results and the number of matches
+	 * @throws InterruptedException
+	 *
+	 * @see InvertedIndex#exactSearch(QueryKey, int)
+	 */
+	public TopResults exactSearch(QueryKey query, int limit) throws InterruptedException {
+		touch();
+		List<Segment> segments = this.segments;
+		Scorer scorer = this.scorer;
+		IndexStatistics statistics = getStatistics(segments);
+		List<Collection<QueryHelper.SearchResult>> results = new ArrayList<Collection<QueryHelper.SearchResult>>();
+		for (Segment segment : segments) {
+			results.add(segment.index.exactMatches(query, scorer, statistics));
+		}
+		return merge(segments, results, limit);
+	}
+
+	/**
+	 * Returns partial search results from every segment.
+	 *
+	 * @param query
+	 *            array of words to be searched for
+	 * @return list of sorted search results
+	 * @throws InterruptedException
+	 *
+	 * @see InvertedIndex#partialSearch(String[])
+	 */
+	public List<QueryHelper.SearchResult> partialSearch(String[] query) throws InterruptedException {
+		return partialSearch(new QueryKey(query), Integer.MAX_VALUE).getResults();
+	}
+
+	/**
+	 * Returns the best partial search results from every segment, along with
+	 * the number of documents that matched.
+	 *
+	 * @param query
+	 *            parsed query to be searched for
+	 * @param limit
+	 *            largest number of search results to return
+	 * @return best search results and the number of matches
+	 * @throws InterruptedException
+	 *
+	 * @see InvertedIndex#partialSearch(QueryKey, int)
+	 */
+	public TopResults partialSearch(QueryKey query, int limit) throws InterruptedException {
+		touch();
+		List<Segment> segments = this.segments;
+		Scorer scorer = this.scorer;
+		IndexStatistics statistics = getStatistics(segments);
+		List<Collection<QueryHelper.SearchResult>> results = new ArrayList<Collection<QueryHelper.SearchResult>>();
+		for (Segment segment : segments) {
+			results.add(segment.index.partialMatches(query, scorer, statistics));
+		}
+		return merge(segments, results, limit);
+	}
+
+	/**
+	 * Returns the time this segmented index was last used, in milliseconds.
+	 *
+	 * @return time of last use
+	 *
+	 * @see System#currentTimeMillis()
+	 */
+	public long getLastAccess() {
+		return lastAccess;
+	}
+
+	/**
+	 * Updates the time this segmented index was last used.
+	 */
+	private void touch() {
+		lastAccess = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the collection statistics of every segment added together, so
+	 * search results from different segments are scored the same way. Older
+	 * versions of documents that are shadowed by newer segments are still
+	 * counted until their segments are merged.
+	 *
+	 * @param segments
+	 *            segments to add the statistics of
+	 * @return statistics of the segments
+	 */
+	private static IndexStatistics getStatistics(List<Segment> segments) {
+		if (segments.size() == 1) {
+			return segments.get(0).index.getStatistics();
+		}
+
+		final IndexStatistics[] statistics = new IndexStatistics[segments.size()];
+		int documentCount = 0;
+		long totalLength = 0;
+		for (int i = 0; i < statistics.length; i++) {
+			statistics[i] = segments.get(i).index.getStatistics();
+			documentCount += statistics[i].getDocumentCount();
+			totalLength += statistics[i].getTotalLength();
+		}
+		return new IndexStatistics(documentCount, totalLength) {
+			@Override
+			public int getDocumentFrequency(String word) {
+				int documentFrequency = 0;
+				for (IndexStatistics segment : statistics) {
+					documentFrequency += segment.getDocumentFrequency(word);
+				}
+				return documentFrequency;
+			}
+		};
+	}
+
+	/**
+	 * Combines the search results of every segment and selects the best ones.
+	 * Results for documents that are also in a newer segment are skipped.
+	 * Only documents added to the base segment after the newer segments
+	 * were added are looked up by their paths.
+	 *
+	 * @param segments
+	 *            segments that were searched, newest first
+	 * @param results
+	 *            unsorted search results of each segment
+	 * @param limit
+	 *            largest number of search results to return
+	 * @return best search results and the number of matches
+	 */
+	private static TopResults merge(List<Segment> segments,
+			List<Collection<QueryHelper.SearchResult>> results, int limit) {
+		List<QueryHelper.SearchResult> matches = new ArrayList<QueryHelper.SearchResult>();
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+			for (QueryHelper.SearchResult result : results.get(i)) {
+				int document = result.getDocument();
+				boolean shadowed = document < segment.known ? segment.shadowed.get(document)
+						: isShadowed(segments, i, result.getWhere());
+				if (!shadowed) {
+					matches.add(result);
+				}
+			}
+		}
+		return TopResults.select(matches, limit);
+	}
+
+	/**
+	 * Tests whether a document is also in a segment newer than the given one.
+	 *
+	 * @param segments
+	 *            segments ordered from newest to oldest
+	 * @param segment
+	 *            position of the segment the document was found in
+	 * @param pathString
+	 *            path or URL of the document
+	 * @return true if a newer segment has a version of the document
+	 */
+	private static boolean isShadowed(List<Segment> segments, int segment, String pathString) {
+		for (int i = 0; i < segment; i++) {
+			if (segments.get(i).index.containsDocument(pathString)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the size tier of a segment. Segments in the same tier are
+	 * within a factor of {@link #MERGE_FACTOR} documents of each other.
+	 *
+	 * @param segment
+	 *            segment to find the tier of
+	 * @return size tier of the segment
+	 */
+	private static int tier(InvertedIndex segment) {
+		int tier = 0;
+		for (int documents = segment.getDocumentCount(); documents >= MERGE_FACTOR; documents /= MERGE_FACTOR) {
+			tier++;
+		}
+		return tier;
+	}
+
+	/**
+	 * Starts merging the newest run of {@link #MERGE_FACTOR} neighboring
+	 * segments in the same size tier, unless a merge is already running. The
+	 * merged segment moves up a tier, so it may start another merge later.
+	 * Must be called while holding the monitor of this index.
+	 */
+	private void scheduleMerge() {
+		if (merging) {
+			return;
+		}
+
+		List<Segment> segments = this.segments;
+		// The base segment is pinned
+		int mergeable = segments.size() - 1;
+		for (int start = 0; start + MERGE_FACTOR <= mergeable; start++) {
+			int tier = tier(segments.get(start).index);
+			int end = start + 1;
+			while (end < start + MERGE_FACTOR && tier(segments.get(end).index) == tier) {
+				end++;
+			}
+			if (end == start + MERGE_FACTOR) {
+				List<InvertedIndex> run = new ArrayList<InvertedIndex>(MERGE_FACTOR);
+				for (Segment segment : segments.subList(start, end)) {
+					run.add(segment.index);
+				}
+				merging = true;
+				mergeQueue.execute(new MergeTask(run));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Swaps a merged segment in for the run of segments it was built from.
+	 * Segments are only ever added in front of the newest segment, and only
+	 * one merge runs at a time, so the run is still together in the list.
+	 * The merged segment has the newest version of each document of the run,
+	 * so the documents shadowed in older segments stay the same.
+	 *
+	 * @param run
+	 *            segments that were merged, newest first
+	 * @param merged
+	 *            segment built from the run
+	 */
+	private synchronized void replace(List<InvertedIndex> run, InvertedIndex merged) {
+		List<Segment> newSegments = new ArrayList<Segment>(segments.size() - run.size() + 1);
+		List<InvertedIndex> newer = new ArrayList<InvertedIndex>();
+		for (Segment segment : segments) {
+			if (segment.index == run.get(0)) {
+				newSegments.add(new Segment(merged).shadowedBy(newer));
+			} else if (!run.contains(segment.index)) {
+				newSegments.add(segment);
+				newer.add(segment.index);
+			}
+		}
+		segments = Collections.unmodifiableList(newSegments);
+		changes.incrementAndGet();
+		merging = false;
+		scheduleMerge();
+	}
+
+	/**
+	 * Holds a segment along with the IDs of its documents that have a newer
+	 * version in a newer segment. Like the list of segments, it is never
+	 * modified, but replaced when a newer segment is added.
+	 */
+	private static class Segment {
+
+		private final InvertedIndex index;
+
+		/** IDs of the documents that are also in a newer segment. */
+		private final BitSet shadowed;
+
+		/**
+		 * Number of documents the segment had when the shadowed documents
+		 * were found. Only the base segment may have more documents since.
+		 */
+		private final int known;
+
+		/**
+		 * Initializes a segment that is the newest, so none of its documents
+		 * are shadowed.
+		 *
+		 * @param index
+		 *            inverted index of the segment
+		 */
+		public Segment(InvertedIndex index) {
+			this(index, new BitSet(), Integer.MAX_VALUE);
+		}
+
+		private Segment(InvertedIndex index, BitSet shadowed, int known) {
+			this.index = index;
+			this.shadowed = shadowed;
+			this.known = known;
+		}
+
+		/**
+		 * Returns a copy of the segment that also has the documents of newer
+		 * segments shadowed.
+		 *
+		 * @param newer
+		 *            segments newer than this one
+		 * @return segment with the documents of the newer segments shadowed
+		 */
+		private Segment shadowedBy(List<InvertedIndex> newer) {
+			int known = Math.min(this.known, index.getDocumentCount());
+			BitSet shadowed = (BitSet) this.shadowed.clone();
+			for (InvertedIndex segment : newer) {
+				for (int i = 0, count = segment.getDocumentCount(); i < count; i++) {
+					int document = index.getDocumentId(segment.getDocumentPath(i));
+					if (document >= 0) {
+						shadowed.set(document);
+					}
+				}
+			}
+			return new Segment(index, shadowed, known);
+		}
+	}
+
+	/**
+	 * Runnable task that merges a run of neighboring segments into one new
+	 * segment, then swaps it in.
+	 */
+	private class MergeTask implements Runnable {
+
+		private final List<InvertedIndex> run;
+
+		/**
+		 * @param run
+		 *            segments to merge, newest first
+		 */
+		public MergeTask(List<InvertedIndex> run) {
+			this.run = run;
+		}
+
+		@Override
+		public void run() {
+			boolean replaced = false;
+			try {
+				InvertedIndex merged = new InvertedIndex();
+				merged.addNewestIndexestoIndex(run);
+				replace(run, merged);
+				replaced = true;
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			} finally {
+				// Keeps the run as it is, but lets a later segment start another merge
+				if (!replaced) {
+					synchronized (SegmentedIndex.this) {
+						merging = false;
+					}
+				}
+			}
+		}
+	}
+}
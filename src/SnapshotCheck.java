@@ -0,0 +1,116 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that an inverted index opened from a snapshot gives the same search
+ * results as the index the snapshot was written from, whether or not the
+ * words a search needs have already been decoded from the snapshot. Partial
+ * searches once counted a decoded word twice, since it was found both among
+ * the decoded words and in the snapshot.
+ *
+ * <pre>
+ * java SnapshotCheck
+ * </pre>
+ *
+ * @author Anthony Panisales
+ */
+public class SnapshotCheck {
+
+	/** Lines of the queries to compare. */
+	private static final String[] QUERIES = {
+			"app OR zzz",
+			"app",
+			"app AND ban",
+			"apple"
+	};
+
+	public static void main(String[] args) throws Exception {
+		InvertedIndex built = new InvertedIndex();
+		add(built, "a.html", "apple banana apple");
+		add(built, "b.html", "application cherry");
+		add(built, "c.html", "banana");
+
+		Path path = Files.createTempFile("index", ".snapshot");
+		int failures = 0;
+		try {
+			built.writeSnapshot(path);
+			InvertedIndex opened = new InvertedIndex(IndexSnapshot.open(path));
+
+			// Once before any word is decoded, and once after every word is
+			for (int round = 0; round < 2; round++) {
+				for (String line : QUERIES) {
+					failures += compare(QueryHelper.parseQuery(line), built, opened, round);
+				}
+				opened.exactSearch(new String[] { "apple" });
+				opened.exactSearch(new String[] { "application" });
+				opened.exactSearch(new String[] { "banana" });
+			}
+		}
+		finally {
+			Files.deleteIfExists(path);
+		}
+
+		System.out.println(failures == 0 ? "Snapshot searches match" : failures + " snapshot searches differ");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Adds a document to an inverted index.
+	 */
+	private static void add(InvertedIndex index, String path, String text) {
+		WordIndex wordIndex = new WordIndex();
+		WordParser.parseWords(text, wordIndex);
+		index.addAll(path, wordIndex, wordIndex.copyWords());
+	}
+
+	/**
+	 * Compares the partial search results of a query, one by one and in a
+	 * batch, on the built and the opened index.
+	 *
+	 * @return number of searches that differ
+	 */
+	private static int compare(QueryKey query, InvertedIndex built, InvertedIndex opened, int round)
+			throws InterruptedException {
+		String expected = describe(built.partialMatches(query));
+		List<QueryKey> keys = Collections.singletonList(query);
+
+		int failures = 0;
+		String[] actuals = {
+				describe(opened.partialMatches(query)),
+				describe(first(opened.batchSearch(keys, false, Integer.MAX_VALUE, null)))
+		};
+		for (String actual : actuals) {
+			if (!actual.equals(expected)) {
+				System.out.printf("Round %d, %s: expected %s, found %s%n", round, query, expected, actual);
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Returns the only search results of a batch search.
+	 */
+	private static Collection<QueryHelper.SearchResult> first(Map<QueryKey, TopResults> results) {
+		return results.values().iterator().next().getResults();
+	}
+
+	/**
+	 * Describes search results by their document, count and score, sorted.
+	 */
+	private static String describe(Collection<QueryHelper.SearchResult> results) {
+		List<String> described = new ArrayList<>();
+		for (QueryHelper.SearchResult result : results) {
+			described.add(String.format("%s:%d:%.6f", result.getWhere(), result.getCount(), result.getScore()));
+		}
+		Collections.sort(described);
+		return described.toString();
+	}
+}
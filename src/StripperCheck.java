@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+/**
+ * Checks that the streaming HTML cleaner gives the same text as cleaning the
+ * HTML with the regular expressions of {@link HTMLCleaner}, both on the whole
+ * text and when the text is written in random chunks with random flushes in
+ * between. Texts are random joins of pieces chosen to be hard to clean, such
+ * as constructs that are never closed, element names in other cases or as
+ * the start of a longer tag name, and entities that run into tags, and
+ * optionally the files of a directory.
+ *
+ * <pre>
+ * java StripperCheck [-path path] [-texts num] [-seed num]
+ * </pre>
+ *
+ * @author Anthony Panisales
+ */
+public class StripperCheck extends RandomTextCheck {
+
+	/** Pieces random texts are joined from. */
+	private static final String[] PIECES = {
+			"a", "B", " ", "\n", "\t", "\u00a0", "\u00e9", "\ud83d\ude00", "\u0130", "\u017f", "\u212a", "<", ">",
+			"/", "!", "-", "--", "=", "\"", ";", "&", "&amp;", "&#38;", "& ;", "<!--", "-->", "<!-", "<b>", "</b>",
+			"<p class=\"x\">", "<head>", "</head>", "<HEAD>", "</HeAd >", "<header>", "</header>", "<style>",
+			"</style>", "<STYLE", "</style", "<script type=\"text/javascript\">", "</script>", "<ScRiPt>",
+			"</SCRIPT>", "<scripts>"
+	};
+
+	public StripperCheck() {
+		super(PIECES, 16);
+	}
+
+	public static void main(String[] args) throws IOException {
+		new StripperCheck().run(args);
+	}
+
+	/**
+	 * Checks that a text is cleaned into the same text every way.
+	 */
+	@Override
+	protected void check(String text, Random random) throws IOException {
+		String expected = HTMLCleaner.stripHTML(text);
+
+		compare(text, "whole", expected, HTMLStripper.stripHTML(text));
+
+		StringWriter chunked = new StringWriter();
+		try (HTMLStripper stripper = new HTMLStripper(chunked)) {
+			write(stripper, text, random);
+		}
+		compare(text, "chunked", expected, chunked.toString());
+	}
+
+	/**
+	 * Writes a text in chunks of random sizes, sometimes flushing after a
+	 * chunk.
+	 */
+	private void write(HTMLStripper stripper, String text, Random random) throws IOException {
+		char[] chars = text.toCharArray();
+		int i = 0;
+		while (i < chars.length) {
+			int length = Math.min(1 + random.nextInt(7), chars.length - i);
+			stripper.write(chars, i, length);
+			i += length;
+			if (random.nextInt(4) == 0) {
+				stripper.flush();
+			}
+		}
+	}
+
+	/**
+	 * Compares the text a cleaner gave with the expected text.
+	 */
+	private void compare(String text, String cleaner, String expected, String actual) {
+		if (!actual.equals(expected)) {
+			fail(cleaner + " cleaner", text, expected, actual);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Holds the best search results of a search, sorted in the order of
+ * {@link QueryHelper.SearchResult#compareTo(QueryHelper.SearchResult)}, along
+ * with the total number of documents that matched the search.
+ *
+ * @author Anthony Panisales
+ */
+public class TopResults {
+
+	/** Compares search results in their natural order. */
+	private static final Comparator<QueryHelper.SearchResult> ORDER = new Comparator<QueryHelper.SearchResult>() {
+		@Override
+		public int compare(QueryHelper.SearchResult a, QueryHelper.SearchResult b) {
+			return a.compareTo(b);
+		}
+	};
+
+	/** Compares search results so the worst result comes first. */
+	private static final Comparator<QueryHelper.SearchResult> REVERSE_ORDER = Collections.reverseOrder(ORDER);
+
+	private final List<QueryHelper.SearchResult> results;
+	private final int total;
+
+	/**
+	 * Initializes the top results.
+	 *
+	 * @param results
+	 *            sorted list of the best search results
+	 * @param total
+	 *            number of documents that matched the search
+	 */
+	public TopResults(List<QueryHelper.SearchResult> results, int total) {
+		this.results = results;
+		this.total = total;
+	}
+
+	/**
+	 * Returns the best search results.
+	 *
+	 * @return sorted list of search results
+	 */
+	public List<QueryHelper.SearchResult> getResults() {
+		return results;
+	}
+
+	/**
+	 * Returns the number of documents that matched the search, including the
+	 * ones that were not among the best results.
+	 *
+	 * @return total number of matches
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Selects the best search results out of every match. Only a heap of at
+	 * most {@code limit} results is kept, so the matches that do not make it
+	 * are never sorted.
+	 *
+	 * @param matches
+	 *            unsorted search results of every matching document
+	 * @param limit
+	 *            largest number of search results to keep
+	 * @return best search results and the number of matches
+	 */
+	public static TopResults select(Collection<QueryHelper.SearchResult> matches, int limit) {
+		List<QueryHelper.SearchResult> results;
+		if (limit >= matches.size()) {
+			results = new ArrayList<QueryHelper.SearchResult>(matches);
+		} else if (limit <= 0) {
+			results = new ArrayList<QueryHelper.SearchResult>();
+		} else {
+			// The worst of the best results so far is at the head of the heap
+			PriorityQueue<QueryHelper.SearchResult> heap = new PriorityQueue<QueryHelper.SearchResult>(limit + 1, REVERSE_ORDER);
+			for (QueryHelper.SearchResult match : matches) {
+				if (heap.size() < limit) {
+					heap.add(match);
+				} else if (match.compareTo(heap.peek()) < 0) {
+					heap.poll();
+					heap.add(match);
+				}
+			}
+			results = new ArrayList<QueryHelper.SearchResult>(heap);
+		}
+		Collections.sort(results, ORDER);
+		return new TopResults(results, matches.size());
+	}
+}
@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -16,17 +17,34 @@ public class WebCrawler {
 	private int limit;
 	private HashSet<URL> usedURLs;
 	private ReadWriteLock lock;
+	private FetchLimits fetchLimits;
+	private CrawlStatistics statistics;
 	
 	public WebCrawler(int limit) {
+		this(limit, FetchLimits.DEFAULT);
+	}
+	
+	/**
+	 * Initializes a web crawler that aborts fetches at the given limits.
+	 * 
+	 * @param limit
+	 *            the total number of URLs to crawl
+	 * @param fetchLimits
+	 *            timeouts and largest page size to abort fetches at
+	 */
+	public WebCrawler(int limit, FetchLimits fetchLimits) {
 		this.index = new InvertedIndex();
 		this.limit = limit;
 		this.usedURLs = new HashSet<URL>();
 		this.lock = new ReadWriteLock();
+		this.fetchLimits = fetchLimits;
+		this.statistics = new CrawlStatistics();
 	}
 	
 	/**
 	 * Uses a work queue to build an inverted index from a seed URL and a web crawler. 
-	 * Each worker thread parses a single URL.
+	 * Each worker thread parses a single URL. Pages are fetched on pooled connections, 
+	 * so pages on the same host reuse connections.
 	 * 
 	 * @param seed
 	 *            the first URL to parse to create the inverted index
@@ -38,11 +56,59 @@ public class WebCrawler {
 	 */
 	public void threadsBuildIndex(URL seed, int numOfThreads) throws InterruptedException {
 		WorkQueue queue = new WorkQueue(numOfThreads);
-		queue.execute(new WebCrawlerTask(seed, queue));
-		queue.finish();
+		try (HttpConnectionPool pool = new HttpConnectionPool(HttpConnectionPool.DEFAULT_PER_HOST,
+				HttpConnectionPool.DEFAULT_IDLE_MILLIS, fetchLimits, statistics)) {
+			queue.execute(new WebCrawlerTask(seed, queue, pool));
+			queue.finish();
+		}
 		queue.shutdown();
 	}
 	
+	/**
+	 * Uses non-blocking fetches to build an inverted index from a seed URL.
+	 * A single thread keeps many requests in flight, and the worker threads
+	 * of a work queue only parse and index the fetched pages, so the number
+	 * of threads no longer limits how many pages are fetched at once. Each
+	 * URL is fetched at most once, and the limit counts the URLs fetched.
+	 * 
+	 * @param seed
+	 *            the first URL to parse to create the inverted index
+	 * @param numOfThreads
+	 *            the number of threads to parse pages with
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * 
+	 * @see AsyncFetcher
+	 */
+	public void asyncBuildIndex(URL seed, int numOfThreads) throws IOException, InterruptedException {
+		WorkQueue queue = new WorkQueue(numOfThreads);
+		try (AsyncFetcher fetcher = new AsyncFetcher(queue, AsyncFetcher.DEFAULT_IN_FLIGHT, fetchLimits, statistics)) {
+			visit(seed, new PageHandler(fetcher));
+			fetcher.finish();
+		}
+		finally {
+			queue.shutdown();
+		}
+	}
+	
+	/**
+	 * Fetches a URL unless it was already fetched or the limit is reached.
+	 * 
+	 * @param url
+	 *            URL to fetch
+	 * @param handler
+	 *            handler that fetches the URL and parses its page
+	 */
+	private void visit(URL url, PageHandler handler) {
+		lock.lockReadWrite();
+		boolean added = usedURLs.size() < limit && usedURLs.add(url);
+		lock.unlockReadWrite();
+		
+		if (added) {
+			handler.fetcher.fetch(url, handler);
+		}
+	}
+	
 	/**
 	 * Returns an inverted index built by the web crawler.
 	 * 
@@ -52,6 +118,16 @@ public class WebCrawler {
 		return index;
 	}
 	
+	/**
+	 * Returns how many pages the web crawler fetched, and how many fetches it
+	 * aborted for each reason.
+	 * 
+	 * @return statistics of the crawl
+	 */
+	public CrawlStatistics getStatistics() {
+		return statistics;
+	}
+	
 	/**
 	 * Runnable task that crawls a single, cleaned, unique URL. Parses all of the URLs 
 	 * on the HTML page from the URL, and adds them to the queue of URLs to process as 
@@ -62,11 +138,13 @@ public class WebCrawler {
 		
 		private final URL url;
 		private final WorkQueue queue;
+		private final HttpConnectionPool pool;
 		
 		
-		public WebCrawlerTask(URL url, WorkQueue queue) {
+		public WebCrawlerTask(URL url, WorkQueue queue, HttpConnectionPool pool) {
 			this.url = url;
 			this.queue = queue;
+			this.pool = pool;
 		}
 
 		@Override
@@ -75,9 +153,11 @@ public class WebCrawler {
 				return;
 			}
 			
-			String html = LinkParser.fetchHTML(url);
+			// Finds the links and the words of the page while it is read
+			WordIndex wordIndex = new WordIndex();
+			PageProcessor processor = new PageProcessor(url, wordIndex);
 			
-			if (html == null) {
+			if (!LinkParser.fetchHTML(url, pool, processor)) {
 				return;
 			}
 			
@@ -85,16 +165,12 @@ public class WebCrawler {
 				return;
 			}
 			
-			ArrayList<URL> urlList = LinkParser.listLinks(url, html);
-			
-			if (usedURLs.size() >= limit) {
-				return;
-			}
+			ArrayList<URL> urlList = processor.getLinks();
 			
 			for (URL newUrl : urlList) {
 				lock.lockReadOnly();
 				if (!usedURLs.contains(newUrl)) {
-					queue.execute(new WebCrawlerTask(newUrl, queue));
+					queue.execute(new WebCrawlerTask(newUrl, queue, pool));
 				}
 				lock.unlockReadOnly();
 			}
@@ -103,10 +179,6 @@ public class WebCrawler {
 				return;
 			}
 			
-			html = HTMLCleaner.stripHTML(html);
-			String[] words = WordParser.parseWords(html);
-			WordIndex wordIndex = new WordIndex();
-			wordIndex.addAll(words);
 			index.addAll(url.toString(), wordIndex, wordIndex.copyWords());
 			
 			synchronized(usedURLs) {
@@ -114,4 +186,32 @@ public class WebCrawler {
 			}
 		}
 	}
+	
+	/**
+	 * Parses a page fetched by an {@link AsyncFetcher}, fetches the URLs on the
+	 * page, and adds the words of the page to the inverted index.
+	 */
+	private class PageHandler implements AsyncFetcher.Handler {
+		
+		private final AsyncFetcher fetcher;
+		
+		public PageHandler(AsyncFetcher fetcher) {
+			this.fetcher = fetcher;
+		}
+		
+		@Override
+		public void handle(URL url, String html) {
+			if (html == null) {
+				return;
+			}
+			
+			WordIndex wordIndex = new WordIndex();
+			ArrayList<URL> urlList = PageProcessor.process(url, html, wordIndex);
+			for (URL newUrl : urlList) {
+				visit(newUrl, this);
+			}
+			
+			index.addAll(url.toString(), wordIndex, wordIndex.copyWords());
+		}
+	}
 }
@@ -1,26 +1,33 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.function.ObjIntConsumer;
 
 /**
- * Data structure to store strings and their positions.
+ * Data structure to store strings and their positions. Can be used as the
+ * sink of {@link WordParser#parseWords(CharSequence, ObjIntConsumer)}, so
+ * words are added as soon as they are parsed.
  */
-public class WordIndex {
+public class WordIndex implements ObjIntConsumer<String> {
 
 	/**
 	 * Stores a mapping of words to the positions the words were found.
 	 */
-	private Map<String, Set<Integer>> index;
+	private Map<String, PositionList> index;
+
+	/**
+	 * Stores the total number of positions in the index.
+	 */
+	private int positions;
 
 	/**
 	 * Initializes the index.
 	 */
 	public WordIndex() {
-		index = new HashMap<String, Set<Integer>>(); 
+		index = new HashMap<String, PositionList>(); 
+		positions = 0;
 	}
 
 	/**
@@ -33,9 +40,21 @@ public class WordIndex {
 	 */
 	public void add(String word, int position) {
 		if (!contains(word)) {
-			index.put(word, new HashSet<Integer>());
+			index.put(word, new PositionList());
+		}
+		if (index.get(word).add(position)) {
+			positions++;
 		}
-		index.get(word).add(position);
+	}
+
+	/**
+	 * Adds the word and the position it was found to the index.
+	 *
+	 * @see #add(String, int)
+	 */
+	@Override
+	public void accept(String word, int position) {
+		add(word, position);
 	}
 
 	/**
@@ -90,6 +109,16 @@ public class WordIndex {
 		return index.size();
 	}
 
+	/**
+	 * Returns the total number of positions stored in the index, which is the
+	 * length of the document the index was built from.
+	 *
+	 * @return number of positions
+	 */
+	public int positions() {
+		return positions;
+	}
+
 	/**
 	 * Tests whether the index contains the specified word.
 	 *
@@ -122,16 +151,13 @@ public class WordIndex {
 	 *            to find in index
 	 * @return sorted list of positions for that word
 	 *
-	 * @see ArrayList#ArrayList(java.util.Collection)
-	 * @see Collections#sort(List)
+	 * @see PositionList#copy()
 	 */
-	public List<Integer> copyPositions(String word) {
-		List<Integer> l = new ArrayList<Integer>();
+	public PositionList copyPositions(String word) {
 		if (contains(word)) {
-			l.addAll(index.get(word));
-			Collections.sort(l);
+			return index.get(word).copy();
 		}
-		return l;
+		return new PositionList();
 	}
 
 	/**
@@ -1,9 +1,10 @@
-import java.io.File;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Scanner;
 
 /**
  * Convenience class to build a {@link WordIndex} from a text file.
@@ -28,8 +29,9 @@ public class WordIndexBuilder {
 	}
 
 	/**
-	 * Opens the file located at the path provided, parses each line in the file
-	 * into words, and stores those words in a word index.
+	 * Opens the file located at the path provided, removes the HTML from the
+	 * file as it is read, and stores the remaining words in a word index.
+	 * The whole file is never held in memory at once.
 	 *
 	 * @param path
 	 *            path to file to parse
@@ -37,26 +39,16 @@ public class WordIndexBuilder {
 	 *            word index to add words
 	 * @throws IOException
 	 *
-	 * @see WordParser#parseWords(String, int)
+	 * @see HTMLStripper#parseWords(java.io.Reader, java.util.function.ObjIntConsumer)
 	 *
-	 * @see Files#newBufferedReader(Path, java.nio.charset.Charset)
-	 * @see StandardCharsets#UTF_8
+	 * @see Files#newInputStream(Path, java.nio.file.OpenOption...)
+	 * @see Charset#defaultCharset()
 	 */
 	public static void buildIndex(Path path, WordIndex index) throws IOException {
-		String htmlString;
-		File wholeHTMLFile = new File(path.toString());
-		Scanner wholeFileScan = new Scanner(wholeHTMLFile);
-		wholeFileScan.useDelimiter("\\A");
-		
-		if (wholeFileScan.hasNext()) {
-			htmlString = HTMLCleaner.stripHTML(wholeFileScan.next());
-			wholeFileScan.close();
-		} else {
-			wholeFileScan.close();
-			return;
+		// Malformed input is replaced rather than reported, so one bad page never stops a build
+		try (Reader reader = new BufferedReader(
+				new InputStreamReader(Files.newInputStream(path), Charset.defaultCharset()))) {
+			HTMLStripper.parseWords(reader, index);
 		}
-		
-		String[] words = WordParser.parseWords(htmlString);
-		index.addAll(words);
 	}
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
+import java.io.Writer;
 import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.TreeSet;
+import java.util.function.ObjIntConsumer;
 import java.util.regex.Pattern;
 
 /**
@@ -59,11 +63,313 @@ public class WordParser {
 	 *            to clean and split
 	 * @return cleaned array of words
 	 *
-	 * @see #split(String)
-	 * @see #clean(String)
+	 * @see #parseWords(CharSequence, ObjIntConsumer)
 	 */
 	public static String[] parseWords(String text) {
-		return split(clean(text));
+		final List<String> words = new ArrayList<>();
+		parseWords(text, new ObjIntConsumer<String>() {
+			@Override
+			public void accept(String word, int position) {
+				words.add(word);
+			}
+		});
+		return words.toArray(new String[words.size()]);
+	}
+
+	/**
+	 * Cleans and splits text in a single pass, passing each word and its
+	 * position to a sink instead of building an array. Gives the same words
+	 * as splitting the text after {@link #clean(String)}: a word is a run of
+	 * alphabetic characters, normalized and converted to lowercase.
+	 *
+	 * The text is scanned in spans that are separated by ASCII characters
+	 * other than letters. A span of ASCII letters is already a normalized
+	 * word, so only spans with other characters are normalized. No ASCII
+	 * character other than a letter can combine into an alphabetic character,
+	 * so normalizing each span on its own never changes the words.
+	 *
+	 * @param text
+	 *            text to clean and split
+	 * @param sink
+	 *            sink to pass each word and its position to, starting at
+	 *            position 1
+	 * @return number of words found
+	 */
+	public static int parseWords(CharSequence text, ObjIntConsumer<String> sink) {
+		Tokenizer tokenizer = new Tokenizer(sink);
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			if (isSeparator(text.charAt(i))) {
+				i++;
+				continue;
+			}
+
+			int end = i;
+			boolean ascii = true;
+			while (end < length && !isSeparator(text.charAt(end))) {
+				ascii &= text.charAt(end) < 0x80;
+				end++;
+			}
+
+			if (ascii) {
+				tokenizer.asciiWord(text, i, end);
+			} else {
+				tokenizer.words(Normalizer.normalize(text.subSequence(i, end), Normalizer.Form.NFC), i == 0);
+			}
+			i = end;
+		}
+		return tokenizer.position;
+	}
+
+	/**
+	 * Cleans and splits the text written to it, passing each word and its
+	 * position to a sink as soon as the word ends, so text can be parsed
+	 * while it is still being read. Gives the same words as
+	 * {@link WordParser#parseWords(CharSequence, ObjIntConsumer)} on the
+	 * whole text once the writer is closed.
+	 */
+	public static class WordWriter extends Writer {
+
+		private final Tokenizer tokenizer;
+		private final StringBuilder span;
+		private boolean ascii;
+		private boolean first;
+
+		/**
+		 * Initializes a writer.
+		 *
+		 * @param sink
+		 *            sink to pass each word and its position to, starting at
+		 *            position 1
+		 */
+		public WordWriter(ObjIntConsumer<String> sink) {
+			this.tokenizer = new Tokenizer(sink);
+			this.span = new StringBuilder();
+			this.ascii = true;
+			this.first = true;
+		}
+
+		@Override
+		public void write(int c) {
+			char ch = (char) c;
+			if (isSeparator(ch)) {
+				endSpan();
+				first = false;
+			} else {
+				span.append(ch);
+				ascii &= ch < 0x80;
+			}
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			int end = off + len;
+			int i = off;
+			while (i < end) {
+				if (isSeparator(cbuf[i])) {
+					endSpan();
+					first = false;
+					i++;
+					continue;
+				}
+
+				int start = i;
+				while (i < end && !isSeparator(cbuf[i])) {
+					ascii &= cbuf[i] < 0x80;
+					i++;
+				}
+				span.append(cbuf, start, i - start);
+			}
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			for (int i = off; i < off + len; i++) {
+				write(str.charAt(i));
+			}
+		}
+
+		/**
+		 * Passes the words of the current span to the sink.
+		 */
+		private void endSpan() {
+			if (span.length() == 0) {
+				return;
+			}
+			if (ascii) {
+				tokenizer.asciiWord(span, 0, span.length());
+			} else {
+				tokenizer.words(Normalizer.normalize(span, Normalizer.Form.NFC), first);
+			}
+			span.setLength(0);
+			ascii = true;
+		}
+
+		/**
+		 * Does nothing, since a word may continue in the next text written.
+		 */
+		@Override
+		public void flush() {
+		}
+
+		/**
+		 * Passes the last words to the sink.
+		 */
+		@Override
+		public void close() {
+			endSpan();
+			first = false;
+		}
+
+		/**
+		 * Returns the number of words found so far.
+		 *
+		 * @return number of words passed to the sink
+		 */
+		public int getCount() {
+			return tokenizer.position;
+		}
+	}
+
+	/**
+	 * Tests whether a character is an ASCII character other than a letter,
+	 * which always separates words.
+	 *
+	 * @param c
+	 *            character to test
+	 * @return true if the character is an ASCII character but not a letter
+	 */
+	private static boolean isSeparator(char c) {
+		return c < 0x80 && !((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'));
+	}
+
+	/**
+	 * Passes words to a sink, reusing one buffer for the characters of every
+	 * word.
+	 */
+	private static class Tokenizer {
+
+		private final ObjIntConsumer<String> sink;
+		private char[] buffer;
+		private int position;
+
+		/**
+		 * Whether the text starts with whitespace that is not trimmed by
+		 * {@link String#trim()}, which makes {@link #split(String)} start
+		 * with an empty word.
+		 */
+		private boolean untrimmed;
+
+		public Tokenizer(ObjIntConsumer<String> sink) {
+			this.sink = sink;
+			this.buffer = new char[32];
+			this.position = 0;
+			this.untrimmed = false;
+		}
+
+		/**
+		 * Passes a word of ASCII letters to the sink in lowercase.
+		 */
+		private void asciiWord(CharSequence text, int start, int end) {
+			if (end - start > buffer.length) {
+				buffer = new char[Math.max(end - start, buffer.length * 2)];
+			}
+			boolean upperI = false;
+			for (int i = start; i < end; i++) {
+				char c = text.charAt(i);
+				upperI |= c == 'I';
+				buffer[i - start] = c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+			}
+			String word;
+			if (upperI) {
+				// Only 'I' depends on the default locale, like dotless i in Turkish
+				word = text.subSequence(start, end).toString().toLowerCase();
+			} else {
+				word = new String(buffer, 0, end - start);
+			}
+			accept(word);
+		}
+
+		/**
+		 * Passes every run of alphabetic characters in normalized text to
+		 * the sink in lowercase.
+		 *
+		 * @param text
+		 *            normalized span of text
+		 * @param first
+		 *            whether the span starts the whole text
+		 */
+		private void words(String text, boolean first) {
+			int start = -1;
+			boolean ascii = true;
+			int i = 0;
+			while (i <= text.length()) {
+				int c = i < text.length() ? text.codePointAt(i) : ' ';
+				if (Character.isAlphabetic(c)) {
+					if (start < 0) {
+						start = i;
+						ascii = true;
+					}
+					ascii &= c < 0x80;
+				} else {
+					if (start >= 0) {
+						if (ascii) {
+							asciiWord(text, start, i);
+						} else {
+							accept(toLowerCase(text.substring(start, i), first && start == 0));
+						}
+						start = -1;
+					} else if (position == 0 && c > ' ' && isSpace(c)) {
+						untrimmed = true;
+					}
+				}
+				i += Character.charCount(c);
+			}
+		}
+
+		/**
+		 * Converts a word to lowercase the same way as converting the whole
+		 * cleaned text would. Whether a capital sigma becomes a final sigma
+		 * depends on the text around it, and in the cleaned text every word
+		 * that does not start the text comes right after whitespace.
+		 *
+		 * @param word
+		 *            word to convert
+		 * @param first
+		 *            whether the word starts the whole text
+		 * @return word in lowercase
+		 */
+		private static String toLowerCase(String word, boolean first) {
+			if (first || word.indexOf('\u03a3') < 0) {
+				return word.toLowerCase();
+			}
+			return (" " + word).toLowerCase().substring(1);
+		}
+
+		/**
+		 * Passes a word to the sink at the next position.
+		 */
+		private void accept(String word) {
+			if (untrimmed) {
+				untrimmed = false;
+				sink.accept("", ++position);
+			}
+			sink.accept(word, ++position);
+		}
+	}
+
+	/**
+	 * Tests whether a character matches {@code (?U)\p{Space}}.
+	 *
+	 * @param c
+	 *            code point to test
+	 * @return true if the character is whitespace
+	 */
+	private static boolean isSpace(int c) {
+		int type = Character.getType(c);
+		return type == Character.SPACE_SEPARATOR || type == Character.LINE_SEPARATOR
+				|| type == Character.PARAGRAPH_SEPARATOR || (c >= 0x9 && c <= 0xd) || c == 0x85;
 	}
 
 	/**
@@ -6,8 +6,9 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -23,8 +24,25 @@ import javax.servlet.http.HttpSession;
 public class SearchServlet extends LoginBaseServlet {
 
 	private static final String TITLE = "Search Engine";
+	
+	/** How long a user's segmented index is kept after its last use, in milliseconds. */
+	private static final long IDLE_TIMEOUT = 30 * 60 * 1000;
+	
+	/** How often idle segmented indexes are looked for, in milliseconds. */
+	private static final long EVICTION_INTERVAL = 60 * 1000;
+	
+	/** Largest number of search results listed on the page. */
+	private static final int RESULTS_PER_PAGE = 50;
+	
 	private HashMap<String, TreeMap<String, String>> historyDB = new HashMap<String, TreeMap<String, String>>();
-	private HashMap<String, InvertedIndex> indexDB = new HashMap<String, InvertedIndex>();
+	private ConcurrentHashMap<String, SegmentedIndex> indexDB = new ConcurrentHashMap<String, SegmentedIndex>();
+	private volatile long lastEviction = System.currentTimeMillis();
+	
+	/** Merges the segments of every user's index in the background. */
+	private final WorkQueue mergeQueue = new WorkQueue(1);
+	
+	/** Caches the results of recent searches of every user's index. */
+	private final QueryCache queryCache = new QueryCache();
 	
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -35,23 +53,22 @@ public class SearchServlet extends LoginBaseServlet {
 			return;
 		}
 		
-		if (!indexDB.containsKey(getUsername(request))) {
-			InvertedIndex tempIndex = Driver.staticIndex;
-			InvertedIndex newIndex = new InvertedIndex();
-			try {
-				newIndex.addIndextoIndex(tempIndex);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		evictIdleIndexes();
+		
+		// Every user shares the same base index and only adds small segments to it
+		SegmentedIndex mainIndex = indexDB.get(getUsername(request));
+		if (mainIndex == null) {
+			mainIndex = new SegmentedIndex(Driver.staticIndex, mergeQueue);
+			SegmentedIndex existing = indexDB.putIfAbsent(getUsername(request), mainIndex);
+			if (existing != null) {
+				mainIndex = existing;
 			}
-			indexDB.put(getUsername(request), newIndex);
 		}
 		
-		InvertedIndex mainIndex = indexDB.get(getUsername(request));
-		
 		HttpSession session = request.getSession();
 		session.setAttribute("justEntered", "No");
 		
-		List<QueryHelper.SearchResult> searchResults = new ArrayList<QueryHelper.SearchResult>();
+		TopResults searchResults = new TopResults(new ArrayList<QueryHelper.SearchResult>(), 0);
 
 		response.setContentType("text/html");
 		response.setStatus(HttpServletResponse.SC_OK);
@@ -162,9 +179,8 @@ public class SearchServlet extends LoginBaseServlet {
 				WebCrawler crawler = new WebCrawler(Driver.staticLimit);
 				crawler.threadsBuildIndex(new URL(request.getParameter("seed")), Driver.staticThreads);
 				InvertedIndex newIndex = crawler.getIndex();
-				mainIndex.addIndextoIndex(newIndex);
+				mainIndex.addSegment(newIndex);
 				out.printf("<p> Database has been updated with new seed: %s </p>%n", request.getParameter("seed"));
-				indexDB.put(getUsername(request), mainIndex);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			} catch (MalformedURLException e) {
@@ -191,21 +207,22 @@ public class SearchServlet extends LoginBaseServlet {
 		    	out.printf("<p> Size of %s's history: %d </p>%n", getUsername(request), userHistory.size());
 		    }
 		    
-			String[] words = WordParser.parseWords(request.getParameter("query"));
+			QueryKey query = QueryHelper.parseQuery(request.getParameter("query"));
 			try {
 				
 				// Search Statistics
 				double startTime = System.nanoTime();
 				if (request.getParameter("partialSearch") != null && request.getParameter("partialSearch").equals("ON")) {
-					searchResults = mainIndex.partialSearch(words);
+					searchResults = queryCache.search(mainIndex, query, false, RESULTS_PER_PAGE);
 				} else {
-					searchResults = mainIndex.exactSearch(words);
+					searchResults = queryCache.search(mainIndex, query, true, RESULTS_PER_PAGE);
 				}
 				double endTime = System.nanoTime();
 				double totalTime = (endTime - startTime) * 0.000000001;
 				
-				out.printf("<p> Total number of results: %d </p>%n", searchResults.size());
+				out.printf("<p> Total number of results: %d </p>%n", searchResults.getTotal());
 				out.printf("<p> Time spent fetching search results: %f seconds</p>%n", totalTime);
+				log.debug("Query cache hits: " + queryCache.getHits() + ", misses: " + queryCache.getMisses());
 				
 			} catch (InterruptedException e) {
 				e.printStackTrace();
@@ -213,7 +230,7 @@ public class SearchServlet extends LoginBaseServlet {
 			
 			// List search results
 			int i = 1;
-			for (QueryHelper.SearchResult result : searchResults) {
+			for (QueryHelper.SearchResult result : searchResults.getResults()) {
 				out.printf("<p> %d. <a href='%s'>%s</a> </p>%n", i++, result.getWhere(), result.getWhere());
 			}
 		}
@@ -224,4 +241,23 @@ public class SearchServlet extends LoginBaseServlet {
 
 		response.flushBuffer();
 	}
+	
+	/**
+	 * Removes the segmented indexes of users that have not searched or added
+	 * a seed recently. Only looks for idle indexes once per eviction interval.
+	 */
+	private void evictIdleIndexes() {
+		long now = System.currentTimeMillis();
+		if (now - lastEviction < EVICTION_INTERVAL) {
+			return;
+		}
+		lastEviction = now;
+		
+		Iterator<SegmentedIndex> iterator = indexDB.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().getLastAccess() > IDLE_TIMEOUT) {
+				iterator.remove();
+			}
+		}
+	}
 }